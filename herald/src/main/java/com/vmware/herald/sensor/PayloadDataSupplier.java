@@ -17,6 +17,7 @@ public interface PayloadDataSupplier {
     LegacyPayloadData legacyPayload(PayloadTimestamp timestamp, Device device);
 
     /// Get payload for given timestamp. Use this for integration with any payload generator, e.g. BeaconCodes or SonarBroadcastPayloadService
+    /// Note: Device is always null for payloads served by the BLE transmitter, as a single payload is shared by all centrals, see BLEPayloadDataCache
     PayloadData payload(PayloadTimestamp timestamp, Device device);
 
     /// Parse raw data into payloads
@@ -6,6 +6,7 @@ package com.vmware.herald.sensor;
 
 import android.content.Context;
 
+import com.vmware.herald.sensor.ble.BLEImmediateSendDelegate;
 import com.vmware.herald.sensor.ble.BLESensorConfiguration;
 import com.vmware.herald.sensor.ble.ConcreteBLESensor;
 import com.vmware.herald.sensor.data.CalibrationLog;
@@ -60,6 +61,11 @@ public class SensorArray implements Sensor {
         return concreteBleSensor.immediateSendAll(data);
     }
 
+    /// Add delegate for receiving immediate send delivery results.
+    public void add(BLEImmediateSendDelegate delegate) {
+        concreteBleSensor.add(delegate);
+    }
+
     public final PayloadData payloadData() {
         return payloadData;
     }
@@ -0,0 +1,110 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Sample;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/// Orders devices for connection by utility, i.e. expected value of the next task for the
+/// device per unit of expected cost, such that the most valuable work is completed first
+/// within the time limit for processing scan results. Expected cost is the mean duration of
+/// previous connections for the same task and operating system.
+public class BLEConnectionPriority<T> {
+    /// Expected duration of tasks without statistics
+    private final double defaultCostMillis;
+    private final ConcurrentMap<BLEDeviceOperatingSystem, ConcurrentMap<T, Sample>> durations = new ConcurrentHashMap<>();
+
+    /// Task and value of task for a device
+    public interface Valuation<T> {
+        /// Next task for device, or null if there is nothing to do
+        T task(BLEDevice device);
+
+        /// Expected value of performing task on device, tasks of no value are not scheduled
+        double value(BLEDevice device, T task);
+    }
+
+    public BLEConnectionPriority(final double defaultCostMillis) {
+        this.defaultCostMillis = defaultCostMillis;
+    }
+
+    /// Record duration of connection for performing task on device with operating system.
+    public void add(final BLEDeviceOperatingSystem operatingSystem, final T task, final long durationMillis) {
+        ConcurrentMap<T, Sample> taskDurations = durations.get(operatingSystem);
+        if (taskDurations == null) {
+            final ConcurrentMap<T, Sample> newTaskDurations = new ConcurrentHashMap<>();
+            taskDurations = durations.putIfAbsent(operatingSystem, newTaskDurations);
+            if (taskDurations == null) {
+                taskDurations = newTaskDurations;
+            }
+        }
+        Sample sample = taskDurations.get(task);
+        if (sample == null) {
+            final Sample newSample = new Sample();
+            sample = taskDurations.putIfAbsent(task, newSample);
+            if (sample == null) {
+                sample = newSample;
+            }
+        }
+        sample.add(durationMillis);
+    }
+
+    /// Expected duration of connection for performing task on device with operating system.
+    public double expectedCost(final BLEDeviceOperatingSystem operatingSystem, final T task) {
+        final Map<T, Sample> taskDurations = durations.get(operatingSystem);
+        if (taskDurations == null) {
+            return defaultCostMillis;
+        }
+        final Sample sample = taskDurations.get(task);
+        if (sample == null || sample.count() == 0) {
+            return defaultCostMillis;
+        }
+        return Math.max(1, sample.mean());
+    }
+
+    /// Devices with tasks of value, in descending order of utility. Devices with equal
+    /// utility remain in the original order.
+    public List<BLEDevice> order(final List<BLEDevice> devices, final Valuation<T> valuation) {
+        final List<Utility> utilities = new ArrayList<>(devices.size());
+        for (final BLEDevice device : devices) {
+            final T task = valuation.task(device);
+            if (task == null) {
+                continue;
+            }
+            final double value = valuation.value(device, task);
+            if (value <= 0) {
+                continue;
+            }
+            utilities.add(new Utility(device, value / expectedCost(device.operatingSystem(), task)));
+        }
+        Collections.sort(utilities, new Comparator<Utility>() {
+            @Override
+            public int compare(Utility u0, Utility u1) {
+                return Double.compare(u1.utility, u0.utility);
+            }
+        });
+        final List<BLEDevice> ordered = new ArrayList<>(utilities.size());
+        for (final Utility utility : utilities) {
+            ordered.add(utility.device);
+        }
+        return ordered;
+    }
+
+    private final static class Utility {
+        private final BLEDevice device;
+        private final double utility;
+
+        private Utility(final BLEDevice device, final double utility) {
+            this.device = device;
+            this.utility = utility;
+        }
+    }
+}
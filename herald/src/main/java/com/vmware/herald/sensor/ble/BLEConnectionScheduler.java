@@ -0,0 +1,160 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.Callback;
+import com.vmware.herald.sensor.datatype.Predicate;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Schedules connections to devices with pending tasks within a time limit, using up to a
+/// fixed number of concurrent connection slots. Each slot takes the next device in order and
+/// connects to it, the connection callback is expected to block until the device has been
+/// disconnected and enforce its own timeouts. A concurrency limit of 1 processes devices one
+/// at a time on the calling thread. The limit applies to all connections made by the scheduler,
+/// such that concurrent callers, e.g. scan processing and immediate send, share the same slots
+/// and each connection waits for a free slot.
+public class BLEConnectionScheduler {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEConnectionScheduler");
+    private final int concurrencyLimit;
+    /// Threads for additional connection slots, the calling thread is always the first slot.
+    private final ExecutorService slots;
+    /// Permits for connections across all callers.
+    private final Semaphore permits;
+
+    public BLEConnectionScheduler(final int concurrencyLimit) {
+        this.concurrencyLimit = Math.max(1, concurrencyLimit);
+        // Threads are not shared between callers, such that slots of one caller are never queued
+        // behind slots of another caller, the number of concurrent connections is limited by permits
+        this.slots = (this.concurrencyLimit > 1 ? Executors.newCachedThreadPool() : null);
+        this.permits = new Semaphore(this.concurrencyLimit, true);
+    }
+
+    /// Outcome of connecting to devices
+    public final static class Result {
+        /// Devices with pending tasks that were connected
+        public final int devicesProcessed;
+        /// Devices that were not visited because the time limit was reached
+        public final int devicesSkipped;
+
+        private Result(final int devicesProcessed, final int devicesSkipped) {
+            this.devicesProcessed = devicesProcessed;
+            this.devicesSkipped = devicesSkipped;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "devicesProcessed=" + devicesProcessed +
+                    ", devicesSkipped=" + devicesSkipped +
+                    '}';
+        }
+    }
+
+    /// Connect to devices in order, skipping devices without pending tasks, until all devices
+    /// have been processed or the time limit is likely to be exceeded. Blocks until all
+    /// connections have been completed. Returns number of devices connected, and number of
+    /// devices left unvisited when processing stopped for time. Devices rejected by the pending
+    /// task predicate are neither processed nor skipped.
+    public Result connect(final List<BLEDevice> devices, final Predicate<BLEDevice> hasPendingTask, final Callback<BLEDevice> connect, final long timeLimitMillis) {
+        final long timeStart = System.currentTimeMillis();
+        final Iterator<BLEDevice> iterator = devices.iterator();
+        final AtomicInteger devicesProcessed = new AtomicInteger(0);
+        final AtomicInteger devicesSkipped = new AtomicInteger(0);
+        final Runnable slot = new Runnable() {
+            @Override
+            public void run() {
+                int slotDevicesProcessed = 0;
+                while (true) {
+                    // Stop process if exceeded time limit
+                    final long elapsedTime = System.currentTimeMillis() - timeStart;
+                    if (elapsedTime >= timeLimitMillis) {
+                        logger.debug("taskConnect, reached time limit (elapsed={}ms,limit={}ms)", elapsedTime, timeLimitMillis);
+                        return;
+                    }
+                    if (slotDevicesProcessed > 0) {
+                        final long predictedElapsedTime = Math.round((elapsedTime / (double) slotDevicesProcessed) * (slotDevicesProcessed + 1));
+                        if (predictedElapsedTime > timeLimitMillis) {
+                            logger.debug("taskConnect, likely to exceed time limit soon (elapsed={}ms,devicesProcessed={},predicted={}ms,limit={}ms)", elapsedTime, slotDevicesProcessed, predictedElapsedTime, timeLimitMillis);
+                            return;
+                        }
+                    }
+                    final BLEDevice device;
+                    synchronized (iterator) {
+                        if (!iterator.hasNext()) {
+                            return;
+                        }
+                        device = iterator.next();
+                    }
+                    if (!hasPendingTask.test(device)) {
+                        continue;
+                    }
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        logger.fault("taskConnect, wait for connection slot interrupted", e);
+                        Thread.currentThread().interrupt();
+                        devicesSkipped.incrementAndGet();
+                        return;
+                    }
+                    try {
+                        connect.accept(device);
+                    } finally {
+                        permits.release();
+                    }
+                    slotDevicesProcessed++;
+                    devicesProcessed.incrementAndGet();
+                }
+            }
+        };
+        if (slots == null) {
+            slot.run();
+            return result(iterator, devicesProcessed.get(), devicesSkipped.get());
+        }
+        final CountDownLatch slotsCompleted = new CountDownLatch(concurrencyLimit - 1);
+        for (int i = concurrencyLimit - 1; i-- > 0; ) {
+            slots.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        slot.run();
+                    } catch (Throwable e) {
+                        logger.fault("taskConnect, slot failed", e);
+                    } finally {
+                        slotsCompleted.countDown();
+                    }
+                }
+            });
+        }
+        slot.run();
+        try {
+            slotsCompleted.await();
+        } catch (InterruptedException e) {
+            logger.fault("taskConnect, wait interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+        return result(iterator, devicesProcessed.get(), devicesSkipped.get());
+    }
+
+    /// Result of connect, counting devices remaining in iterator as skipped.
+    private static Result result(final Iterator<BLEDevice> iterator, final int devicesProcessed, final int devicesSkipped) {
+        int devicesRemaining = 0;
+        synchronized (iterator) {
+            while (iterator.hasNext()) {
+                iterator.next();
+                devicesRemaining++;
+            }
+        }
+        return new Result(devicesProcessed, devicesSkipped + devicesRemaining);
+    }
+}
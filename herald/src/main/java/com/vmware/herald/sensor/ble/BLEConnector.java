@@ -0,0 +1,154 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Sample;
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+
+/// Connection lifecycle for connecting to a device, waiting for all the tasks to be completed
+/// asynchronously by GATT callbacks, and then disconnecting. Waiting is driven by stateChanged()
+/// signals from the connection state change callback, rather than polling device state, so the
+/// next device can be processed as soon as a connection is closed.
+public class BLEConnector<G> {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEConnector");
+    /// Device state is also checked at this interval while waiting, to guard against state
+    /// changes that are not signalled, e.g. by the transmitter for central connections.
+    private final static long stateCheckIntervalMillis = 1000;
+    private final Gatt<G> gatt;
+    private final long timeToConnectDeviceLimitMillis;
+    private final long timeToProcessDeviceLimitMillis;
+    private final Sample timeToConnectDevice = new Sample();
+    private final Sample timeToProcessDevice = new Sample();
+    private final Object stateChanged = new Object();
+    private final BLEReceiverMetrics metrics;
+
+    /// GATT layer for opening and closing connections
+    public interface Gatt<G> {
+        /// Initiate connection to device, returns connection or null on failure. Connection state
+        /// changes should be set on the device and signalled by calling stateChanged().
+        G connect(BLEDevice device);
+
+        /// Close connection.
+        void close(G connection);
+    }
+
+    public enum Result {
+        alreadyConnected, connectFailed, connectTimeout, disconnectTimeout, success
+    }
+
+    public BLEConnector(final Gatt<G> gatt, final long timeToConnectDeviceLimitMillis, final long timeToProcessDeviceLimitMillis) {
+        this(gatt, timeToConnectDeviceLimitMillis, timeToProcessDeviceLimitMillis, new BLEReceiverMetrics());
+    }
+
+    /// Connector recording time to connect and process devices in receiver metrics.
+    public BLEConnector(final Gatt<G> gatt, final long timeToConnectDeviceLimitMillis, final long timeToProcessDeviceLimitMillis, final BLEReceiverMetrics metrics) {
+        this.gatt = gatt;
+        this.timeToConnectDeviceLimitMillis = timeToConnectDeviceLimitMillis;
+        this.timeToProcessDeviceLimitMillis = timeToProcessDeviceLimitMillis;
+        this.metrics = metrics;
+    }
+
+    /// Signal device connection state change to the waiting connect() call.
+    public void stateChanged(final BLEDevice device) {
+        synchronized (stateChanged) {
+            stateChanged.notifyAll();
+        }
+    }
+
+    /// Connect to device and wait for disconnection once all the tasks have been completed.
+    public Result connect(final BLEDevice device) {
+        if (device.state() == BLEDeviceState.connected) {
+            logger.debug("taskConnectDevice, already connected to transmitter (device={})", device);
+            return Result.alreadyConnected;
+        }
+        // Connect (timeout at 95% = 2 SD)
+        final long timeConnect = System.currentTimeMillis();
+        logger.debug("taskConnectDevice, connect (device={})", device);
+        device.state(BLEDeviceState.connecting);
+        final G connection = gatt.connect(device);
+        if (connection == null) {
+            logger.fault("taskConnectDevice, connect failed (device={})", device);
+            device.state(BLEDeviceState.disconnected);
+            return Result.connectFailed;
+        }
+        // Wait for connection
+        // A connect request should normally result in .connected or .disconnected state which is
+        // set asynchronously by the callback function onConnectionStateChange(). However, some
+        // connections may get stuck in a .connecting state indefinitely due to BLE issues, and
+        // therefore the callback function is never called, leaving the device in a limbo state.
+        // As such, the wait is limited to a fixed duration (established through experimentation)
+        // to check if connection was successful, else abort the connection to put the device in
+        // a consistent default .disconnected state.
+        await(device, BLEDeviceState.connected, BLEDeviceState.disconnected, timeConnect + timeToConnectDeviceLimitMillis);
+        if (device.state() != BLEDeviceState.connected) {
+            // Failed to establish connection within time limit, assume connection failure
+            // and disconnect device to put it in a consistent default .disconnected state
+            logger.fault("taskConnectDevice, connect timeout (device={})", device);
+            close(device, connection);
+            return Result.connectTimeout;
+        } else {
+            // Connection was successful, make note of time to establish connection to
+            // inform setting of timeToConnectDeviceLimitMillis.
+            final long connectElapsed = System.currentTimeMillis() - timeConnect;
+            timeToConnectDevice.add(connectElapsed);
+            metrics.stage(BLEReceiverMetrics.Stage.connectDevice, connectElapsed);
+            logger.debug("taskConnectDevice, connected (device={},elapsed={}ms,statistics={})", device, connectElapsed, timeToConnectDevice);
+        }
+        // Wait for disconnection
+        // Device is connected at this point, and all the actual work is being
+        // performed asynchronously by callback methods. The following code waits
+        // for device state change from .connected to .disconnected, which is
+        // normally set asynchronously by the callback function onConnectionStateChange(),
+        // once all the tasks for the device have been completed. If the connection has
+        // been held too long, then this function will force a disconnection by closing
+        // the connection to put the device in a consistent default .disconnected state.
+        await(device, BLEDeviceState.disconnected, BLEDeviceState.disconnected, timeConnect + timeToProcessDeviceLimitMillis);
+        Result result = Result.success;
+        // Timeout connection if required, and always set state to disconnected
+        if (device.state() != BLEDeviceState.disconnected) {
+            // Failed to complete tasks and disconnect within time limit, assume failure
+            // and disconnect device to put it in a consistent default .disconnected state
+            logger.fault("taskConnectDevice, disconnect timeout (device={})", device);
+            close(device, connection);
+            result = Result.disconnectTimeout;
+        }
+        // Always set state to .disconnected at the end
+        device.state(BLEDeviceState.disconnected);
+        final long timeElapsed = System.currentTimeMillis() - timeConnect;
+        if (result == Result.success) {
+            timeToProcessDevice.add(timeElapsed);
+            metrics.stage(BLEReceiverMetrics.Stage.processDevice, timeElapsed);
+            logger.debug("taskConnectDevice, complete (success=true,device={},elapsed={}ms,statistics={})", device, timeElapsed, timeToProcessDevice);
+        } else {
+            logger.fault("taskConnectDevice, complete (success=false,device={},elapsed={}ms)", device, timeElapsed);
+        }
+        return result;
+    }
+
+    /// Wait until device is in one of the given states or deadline has been reached.
+    private void await(final BLEDevice device, final BLEDeviceState state1, final BLEDeviceState state2, final long deadline) {
+        synchronized (stateChanged) {
+            long remaining;
+            while (device.state() != state1 && device.state() != state2 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    stateChanged.wait(Math.min(remaining, stateCheckIntervalMillis));
+                } catch (InterruptedException e) {
+                    logger.fault("Wait interrupted", e);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void close(final BLEDevice device, final G connection) {
+        try {
+            gatt.close(connection);
+        } catch (Throwable e) {
+            logger.fault("taskConnectDevice, close failed (device={})", device, e);
+        }
+    }
+}
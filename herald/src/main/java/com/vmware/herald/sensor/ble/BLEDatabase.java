@@ -7,8 +7,12 @@ package com.vmware.herald.sensor.ble;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.le.ScanResult;
 
+import com.vmware.herald.sensor.ble.filter.BLEAdvertClassification;
+import com.vmware.herald.sensor.datatype.Callback;
 import com.vmware.herald.sensor.datatype.PayloadData;
 import com.vmware.herald.sensor.datatype.PayloadSharingData;
+import com.vmware.herald.sensor.datatype.Predicate;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
 
 import java.util.List;
@@ -18,9 +22,15 @@ public interface BLEDatabase {
     /// Add delegate for handling database events
     void add(BLEDatabaseDelegate delegate);
 
+    /// Add delegate for handling database events in batches
+    void add(BLEDatabaseBatchDelegate delegate);
+
     /// Get or create device for collating information from asynchronous BLE operations.
     BLEDevice device(ScanResult scanResult);
 
+    /// Get or create device for scan result, using classification of the scan record to avoid parsing it again.
+    BLEDevice device(ScanResult scanResult, BLEAdvertClassification classification);
+
     /// Get or create device for collating information from asynchronous BLE operations.
     BLEDevice device(BluetoothDevice bluetoothDevice);
 
@@ -30,12 +40,34 @@ public interface BLEDatabase {
     /// Get a device from a TargetIdentifier
     BLEDevice device(TargetIdentifier targetIdentifier);
 
+    /// Get a device from a PseudoDeviceAddress
+    BLEDevice device(PseudoDeviceAddress pseudoDeviceAddress);
+
     /// Get all devices
     List<BLEDevice> devices();
 
+    /// Visit all devices without copying the database. Iteration is weakly consistent,
+    /// devices created or deleted during iteration may or may not be visited.
+    void forEachDevice(Callback<BLEDevice> visitor);
+
+    /// Visit all devices that match predicate without copying the database.
+    void forEachDevice(Predicate<BLEDevice> predicate, Callback<BLEDevice> visitor);
+
     /// Delete
     void delete(BLEDevice device);
 
-    /// Get payload sharing data for a peer
+    /// Get devices that have not been updated for over the device expiry time interval.
+    /// Expired devices are only returned once and should be deleted by the caller.
+    List<BLEDevice> expiredDevices();
+
+    /// Get devices that have been connected for over the connection expiry time interval.
+    /// Expired connections are only returned once and should be disconnected by the caller.
+    List<BLEDevice> expiredConnections();
+
+    /// Get payload sharing data for a peer, without recording the payloads as shared with the peer
     PayloadSharingData payloadSharingData(BLEDevice peer);
+
+    /// Get payload sharing data for a peer, and collect payloads that have not been shared with the
+    /// peer yet in newPayloads, for recording as shared once the data has been written to the peer.
+    PayloadSharingData payloadSharingData(BLEDevice peer, List<PayloadData> newPayloads);
 }
@@ -0,0 +1,15 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.List;
+
+/// Delegate for receiving registry create/update/delete events in batches. Update events other
+/// than RSSI are coalesced per device and attribute within a batch, delegates should read current
+/// attribute values from the device.
+public interface BLEDatabaseBatchDelegate {
+    /// Events in order of occurrence
+    void bleDatabaseDidUpdate(List<BLEDatabaseEvent> events);
+}
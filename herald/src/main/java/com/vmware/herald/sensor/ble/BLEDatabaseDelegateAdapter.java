@@ -0,0 +1,33 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.List;
+
+/// Adapter for delivering batched events to a per-event BLEDatabaseDelegate.
+public class BLEDatabaseDelegateAdapter implements BLEDatabaseBatchDelegate {
+    private final BLEDatabaseDelegate delegate;
+
+    public BLEDatabaseDelegateAdapter(final BLEDatabaseDelegate delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void bleDatabaseDidUpdate(final List<BLEDatabaseEvent> events) {
+        for (final BLEDatabaseEvent event : events) {
+            switch (event.type) {
+                case create:
+                    delegate.bleDatabaseDidCreate(event.device);
+                    break;
+                case update:
+                    delegate.bleDatabaseDidUpdate(event.device, event.attribute);
+                    break;
+                case delete:
+                    delegate.bleDatabaseDidDelete(event.device);
+                    break;
+            }
+        }
+    }
+}
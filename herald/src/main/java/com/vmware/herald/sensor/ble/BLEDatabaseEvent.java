@@ -0,0 +1,32 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+/// Registry create/update/delete event for batched delivery to BLEDatabaseBatchDelegate.
+public class BLEDatabaseEvent {
+    public enum Type {
+        create, update, delete
+    }
+
+    public final Type type;
+    public final BLEDevice device;
+    /// Updated attribute for update events, null otherwise
+    public final BLEDeviceAttribute attribute;
+
+    public BLEDatabaseEvent(final Type type, final BLEDevice device, final BLEDeviceAttribute attribute) {
+        this.type = type;
+        this.device = device;
+        this.attribute = attribute;
+    }
+
+    @Override
+    public String toString() {
+        return "BLEDatabaseEvent{" +
+                "type=" + type +
+                ", device=" + device.identifier +
+                ", attribute=" + attribute +
+                '}';
+    }
+}
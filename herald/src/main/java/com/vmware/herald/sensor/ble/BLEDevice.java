@@ -11,17 +11,14 @@ import android.bluetooth.le.ScanRecord;
 import com.vmware.herald.sensor.Device;
 import com.vmware.herald.sensor.datatype.Calibration;
 import com.vmware.herald.sensor.datatype.CalibrationMeasurementUnit;
-import com.vmware.herald.sensor.datatype.Data;
 import com.vmware.herald.sensor.datatype.PayloadData;
 import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
 import com.vmware.herald.sensor.datatype.RSSI;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
 import com.vmware.herald.sensor.datatype.TimeInterval;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Queue;
 
 public class BLEDevice extends Device {
     /// Pseudo device address for tracking Android devices that change address constantly.
@@ -37,8 +34,6 @@ public class BLEDevice extends Device {
     /// Payload data acquired from the device via payloadCharacteristic read, e.g. C19X beacon code or Sonar encrypted identifier
     private PayloadData payloadData = null;
     private Date lastPayloadDataUpdate = null;
-    /// Immediate Send data to send next
-    private Data immediateSendData = null;
     /// Most recent RSSI measurement taken by readRSSI or didDiscover.
     private RSSI rssi = null;
     /// Transmit power data where available (only provided by Android devices)
@@ -55,7 +50,7 @@ public class BLEDevice extends Device {
     private BluetoothGattCharacteristic payloadCharacteristic = null;
     private BluetoothGattCharacteristic legacyPayloadCharacteristic = null;
     protected byte[] signalCharacteristicWriteValue = null;
-    protected Queue<byte[]> signalCharacteristicWriteQueue = null;
+    protected BLEWriteFragments signalCharacteristicWriteQueue = null;
 
     private BluetoothGattCharacteristic modelCharacteristic = null;
     private String model = null;
@@ -67,7 +62,9 @@ public class BLEDevice extends Device {
     private Date lastConnectedAt = null;
 
     /// Payload data already shared with this peer
-    protected final List<PayloadData> payloadSharingData = new ArrayList<>();
+    protected final BLEPayloadSharingHistory payloadSharingData = new BLEPayloadSharingHistory();
+    /// Payload data new to this peer in payload sharing write in progress, recorded on success
+    protected List<PayloadData> payloadSharingWriteValue = null;
 
     /// Track write timestamps
     private Date lastWritePayloadAt = null;
@@ -117,6 +114,7 @@ public class BLEDevice extends Device {
         if (this.pseudoDeviceAddress == null || !this.pseudoDeviceAddress.equals(pseudoDeviceAddress)) {
             this.pseudoDeviceAddress = pseudoDeviceAddress;
             lastUpdatedAt = new Date();
+            delegate.device(this, BLEDeviceAttribute.pseudoDeviceAddress);
         }
     }
 
@@ -201,14 +199,6 @@ public class BLEDevice extends Device {
         return new TimeInterval((new Date().getTime() - lastPayloadDataUpdate.getTime()) / 1000);
     }
 
-    public void immediateSendData(Data immediateSendData) {
-        this.immediateSendData = immediateSendData;
-    }
-
-    public Data immediateSendData() {
-        return immediateSendData;
-    }
-
     public RSSI rssi() {
         return rssi;
     }
@@ -0,0 +1,258 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.Callback;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.Int64;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.Predicate;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+import com.vmware.herald.sensor.datatype.UInt16;
+import com.vmware.herald.sensor.datatype.UInt8;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Warm start cache of recently seen devices, for restoring device information after a process
+/// restart or Bluetooth power cycle without reconnecting to every nearby device. Devices are
+/// keyed by pseudo device address, as this is the only stable identifier available from a scan
+/// result before connection. File I/O is performed by load() and save() only, which are called
+/// by ConcreteBLEDatabase on a background thread, such that restore() on the scan callback thread
+/// never blocks on disk I/O. Devices cannot be restored until the cache has been loaded.
+public class BLEDeviceCache {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEDeviceCache");
+    private final static int version = 1;
+    private final File file;
+    /// Cached devices are only restored if they were seen within this time interval
+    private final TimeInterval expiry;
+    /// Lock for file I/O, held without holding the lock for cached devices
+    private final Object fileLock = new Object();
+    /// Cached devices that have not been restored yet, null until loaded
+    private Map<Long, Entry> entries = null;
+
+    /// Cached device information
+    public final static class Entry {
+        public final PseudoDeviceAddress pseudoDeviceAddress;
+        public final long lastUpdatedAt;
+        public final BLEDeviceOperatingSystem operatingSystem;
+        public final PayloadData payloadData;
+        public final String model;
+        public final String deviceName;
+
+        public Entry(final PseudoDeviceAddress pseudoDeviceAddress, final long lastUpdatedAt, final BLEDeviceOperatingSystem operatingSystem, final PayloadData payloadData, final String model, final String deviceName) {
+            this.pseudoDeviceAddress = pseudoDeviceAddress;
+            this.lastUpdatedAt = lastUpdatedAt;
+            this.operatingSystem = operatingSystem;
+            this.payloadData = payloadData;
+            this.model = model;
+            this.deviceName = deviceName;
+        }
+
+        public Entry(final BLEDevice device) {
+            this(device.pseudoDeviceAddress(), device.lastUpdatedAt.getTime(), device.operatingSystem(), device.payloadData(), device.model(), device.deviceName());
+        }
+    }
+
+    public BLEDeviceCache(final File file, final TimeInterval expiry) {
+        this.file = file;
+        this.expiry = expiry;
+    }
+
+    /// Get and remove cached device information for pseudo device address, returns null if
+    /// device is not in cache, it has not been seen recently, or the cache has not been loaded.
+    public synchronized Entry restore(final PseudoDeviceAddress pseudoDeviceAddress) {
+        if (pseudoDeviceAddress == null || entries == null) {
+            return null;
+        }
+        final Entry entry = entries.remove(pseudoDeviceAddress.address);
+        if (entry == null || expired(entry, System.currentTimeMillis())) {
+            return null;
+        }
+        return entry;
+    }
+
+    /// Has the cache been loaded?
+    public synchronized boolean loaded() {
+        return entries != null;
+    }
+
+    /// Load cached devices from file if not loaded already.
+    public void load() {
+        synchronized (fileLock) {
+            if (loaded()) {
+                return;
+            }
+            final Map<Long, Entry> loadedEntries = new HashMap<>();
+            final List<Entry> decoded = read();
+            if (decoded != null) {
+                for (final Entry entry : decoded) {
+                    loadedEntries.put(entry.pseudoDeviceAddress.address, entry);
+                }
+                logger.debug("load (devices={})", loadedEntries.size());
+            }
+            synchronized (this) {
+                entries = loadedEntries;
+            }
+        }
+    }
+
+    /// Save recently seen devices with pseudo device address and payload to file, together
+    /// with previously cached devices that have not been restored or expired yet. Loads the
+    /// cache first if not loaded already, to keep previously cached devices.
+    public void save(final BLEDatabase database) {
+        synchronized (fileLock) {
+            load();
+            final long now = System.currentTimeMillis();
+            final Map<Long, Entry> snapshot = new HashMap<>();
+            synchronized (this) {
+                for (final Entry entry : entries.values()) {
+                    if (!expired(entry, now)) {
+                        snapshot.put(entry.pseudoDeviceAddress.address, entry);
+                    }
+                }
+            }
+            database.forEachDevice(new Predicate<BLEDevice>() {
+                @Override
+                public boolean test(BLEDevice device) {
+                    return device.pseudoDeviceAddress() != null && device.payloadData() != null
+                            && now - device.lastUpdatedAt.getTime() < expiry.millis();
+                }
+            }, new Callback<BLEDevice>() {
+                @Override
+                public void accept(BLEDevice device) {
+                    final Entry entry = new Entry(device);
+                    snapshot.put(entry.pseudoDeviceAddress.address, entry);
+                }
+            });
+            if (write(encode(new ArrayList<>(snapshot.values())))) {
+                logger.debug("save (devices={})", snapshot.size());
+            }
+        }
+    }
+
+    private boolean expired(final Entry entry, final long now) {
+        return now - entry.lastUpdatedAt >= expiry.millis();
+    }
+
+    /// Read cached devices from file, returns null if file does not exist or is invalid.
+    private List<Entry> read() {
+        if (!file.exists()) {
+            return null;
+        }
+        FileInputStream fileInputStream = null;
+        try {
+            final byte[] bytes = new byte[(int) file.length()];
+            fileInputStream = new FileInputStream(file);
+            int offset = 0;
+            while (offset < bytes.length) {
+                final int count = fileInputStream.read(bytes, offset, bytes.length - offset);
+                if (count < 0) {
+                    break;
+                }
+                offset += count;
+            }
+            final List<Entry> decoded = decode(new Data(bytes));
+            if (decoded == null) {
+                logger.fault("load failed, invalid data (file={})", file);
+            }
+            return decoded;
+        } catch (Throwable e) {
+            logger.fault("load failed (file={})", file, e);
+            return null;
+        } finally {
+            close(fileInputStream);
+        }
+    }
+
+    /// Write data to temporary file and rename to avoid reading partially written file.
+    private boolean write(final Data data) {
+        final File temporaryFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fileOutputStream = null;
+        try {
+            fileOutputStream = new FileOutputStream(temporaryFile);
+            fileOutputStream.write(data.value);
+            fileOutputStream.close();
+            fileOutputStream = null;
+            if (!temporaryFile.renameTo(file)) {
+                logger.fault("save failed, rename failed (file={})", file);
+                return false;
+            }
+            return true;
+        } catch (Throwable e) {
+            logger.fault("save failed (file={})", file, e);
+            return false;
+        } finally {
+            close(fileOutputStream);
+        }
+    }
+
+    private void close(final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Throwable e) {
+            logger.fault("close failed (file={})", file, e);
+        }
+    }
+
+    // MARK:- Encoding
+
+    /// Encode entries as compact binary data.
+    protected static Data encode(final List<Entry> entries) {
+        final Data data = new Data();
+        data.append(new UInt8(version));
+        for (final Entry entry : entries) {
+            data.append(new Int64(entry.pseudoDeviceAddress.address));
+            data.append(new Int64(entry.lastUpdatedAt));
+            data.append(entry.operatingSystem.name());
+            data.append(new UInt16(entry.payloadData.value.length));
+            data.append(entry.payloadData);
+            data.append(entry.model == null ? "" : entry.model);
+            data.append(entry.deviceName == null ? "" : entry.deviceName);
+        }
+        return data;
+    }
+
+    /// Decode entries from binary data, returns null if data is invalid.
+    protected static List<Entry> decode(final Data data) {
+        final UInt8 dataVersion = data.uint8(0);
+        if (dataVersion == null || dataVersion.value != version) {
+            return null;
+        }
+        final List<Entry> entries = new ArrayList<>();
+        int index = 1;
+        try {
+            while (index < data.value.length) {
+                final long address = data.int64(index).value;
+                final long lastUpdatedAt = data.int64(index + 8).value;
+                final Data.DecodedString operatingSystem = data.string(index + 16);
+                final int payloadDataLength = data.uint16(operatingSystem.end).value;
+                final PayloadData payloadData = new PayloadData(data.subdata(operatingSystem.end + 2, payloadDataLength).value);
+                final Data.DecodedString model = data.string(operatingSystem.end + 2 + payloadDataLength);
+                final Data.DecodedString deviceName = data.string(model.end);
+                entries.add(new Entry(new PseudoDeviceAddress(address), lastUpdatedAt,
+                        BLEDeviceOperatingSystem.valueOf(operatingSystem.value), payloadData,
+                        (model.value.isEmpty() ? null : model.value),
+                        (deviceName.value.isEmpty() ? null : deviceName.value)));
+                index = deviceName.end;
+            }
+        } catch (Throwable e) {
+            return null;
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,191 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/// Cache of capability profiles established by service discovery, keyed by stable device identity
+/// (pseudo device address and payload data) rather than the changing Bluetooth address. Android
+/// still requires service discovery on each connection to obtain characteristics, but a cached
+/// profile allows the next task for a device to be planned before connection, e.g. operating
+/// system is known without a payload read to confirm it, and introspection data is known without
+/// reading it again. Profiles are replaced on each discovery, and invalidated when discovery
+/// contradicts the profile, such that a wrong profile costs at most one connection.
+public class BLEDeviceProfileCache {
+    /// Default maximum number of profiles per identity type
+    public final static int defaultCapacity = 1024;
+    /// Default time interval before profiles are discovered again
+    public final static TimeInterval defaultExpiry = TimeInterval.minutes(60);
+    private final TimeInterval expiry;
+    private final Map<Long, Profile> byPseudoDeviceAddress;
+    private final Map<PayloadData, Profile> byPayloadData;
+    private long hits = 0;
+    private long misses = 0;
+    private long invalidations = 0;
+
+    /// Characteristic layout and introspection data of a device
+    public final static class Profile {
+        public final BLEDeviceOperatingSystem operatingSystem;
+        public final boolean supportsSignalCharacteristic;
+        public final boolean supportsPayloadCharacteristic;
+        public final boolean supportsLegacyPayloadCharacteristic;
+        public final boolean supportsModelCharacteristic;
+        public final boolean supportsDeviceNameCharacteristic;
+        public final String model;
+        public final String deviceName;
+        public final long createdAt;
+
+        public Profile(final BLEDeviceOperatingSystem operatingSystem, final boolean supportsSignalCharacteristic, final boolean supportsPayloadCharacteristic, final boolean supportsLegacyPayloadCharacteristic, final boolean supportsModelCharacteristic, final boolean supportsDeviceNameCharacteristic, final String model, final String deviceName, final long createdAt) {
+            this.operatingSystem = operatingSystem;
+            this.supportsSignalCharacteristic = supportsSignalCharacteristic;
+            this.supportsPayloadCharacteristic = supportsPayloadCharacteristic;
+            this.supportsLegacyPayloadCharacteristic = supportsLegacyPayloadCharacteristic;
+            this.supportsModelCharacteristic = supportsModelCharacteristic;
+            this.supportsDeviceNameCharacteristic = supportsDeviceNameCharacteristic;
+            this.model = model;
+            this.deviceName = deviceName;
+            this.createdAt = createdAt;
+        }
+
+        /// Profile of device after service discovery, operating system is only known for devices
+        /// offering a signal characteristic.
+        public Profile(final BLEDevice device) {
+            this((device.signalCharacteristic() == null ? BLEDeviceOperatingSystem.unknown : device.operatingSystem()),
+                    device.signalCharacteristic() != null, device.payloadCharacteristic() != null,
+                    device.legacyPayloadCharacteristic() != null, device.supportsModelCharacteristic(),
+                    device.supportsDeviceNameCharacteristic(), device.model(), device.deviceName(),
+                    System.currentTimeMillis());
+        }
+
+        /// Is characteristic layout the same as other profile?
+        public boolean sameLayout(final Profile other) {
+            return other != null
+                    && operatingSystem == other.operatingSystem
+                    && supportsSignalCharacteristic == other.supportsSignalCharacteristic
+                    && supportsPayloadCharacteristic == other.supportsPayloadCharacteristic
+                    && supportsLegacyPayloadCharacteristic == other.supportsLegacyPayloadCharacteristic;
+        }
+
+        @Override
+        public String toString() {
+            return "Profile{" +
+                    "os=" + operatingSystem +
+                    ", signal=" + supportsSignalCharacteristic +
+                    ", payload=" + supportsPayloadCharacteristic +
+                    ", legacyPayload=" + supportsLegacyPayloadCharacteristic +
+                    ", model=" + supportsModelCharacteristic +
+                    ", deviceName=" + supportsDeviceNameCharacteristic +
+                    '}';
+        }
+    }
+
+    public BLEDeviceProfileCache() {
+        this(defaultCapacity, defaultExpiry);
+    }
+
+    public BLEDeviceProfileCache(final int capacity, final TimeInterval expiry) {
+        this.expiry = expiry;
+        this.byPseudoDeviceAddress = lruMap(capacity);
+        this.byPayloadData = lruMap(capacity);
+    }
+
+    private static <K> Map<K, Profile> lruMap(final int capacity) {
+        return new LinkedHashMap<K, Profile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Profile> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /// Get profile for device by pseudo device address or payload data, returns null if the
+    /// device is unknown or the profile has expired.
+    public synchronized Profile get(final BLEDevice device) {
+        final Profile profile = lookup(device);
+        if (profile == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return profile;
+    }
+
+    private Profile lookup(final BLEDevice device) {
+        Profile profile = null;
+        final PseudoDeviceAddress pseudoDeviceAddress = device.pseudoDeviceAddress();
+        if (pseudoDeviceAddress != null) {
+            profile = byPseudoDeviceAddress.get(pseudoDeviceAddress.address);
+        }
+        if (profile == null && device.payloadData() != null) {
+            profile = byPayloadData.get(device.payloadData());
+        }
+        if (profile == null || System.currentTimeMillis() - profile.createdAt >= expiry.millis()) {
+            return null;
+        }
+        return profile;
+    }
+
+    /// Set profile for device, returns false if this has invalidated a previous profile with a
+    /// different layout.
+    public synchronized boolean put(final BLEDevice device, final Profile profile) {
+        final Profile previous = lookup(device);
+        final PseudoDeviceAddress pseudoDeviceAddress = device.pseudoDeviceAddress();
+        if (pseudoDeviceAddress != null) {
+            byPseudoDeviceAddress.put(pseudoDeviceAddress.address, profile);
+        }
+        if (device.payloadData() != null) {
+            byPayloadData.put(device.payloadData(), profile);
+        }
+        if (previous != null && !previous.sameLayout(profile)) {
+            invalidations++;
+            return false;
+        }
+        return true;
+    }
+
+    /// Remove profile for device, e.g. when sensor service was not found.
+    public synchronized void invalidate(final BLEDevice device) {
+        final PseudoDeviceAddress pseudoDeviceAddress = device.pseudoDeviceAddress();
+        boolean removed = false;
+        if (pseudoDeviceAddress != null) {
+            removed = (byPseudoDeviceAddress.remove(pseudoDeviceAddress.address) != null);
+        }
+        if (device.payloadData() != null) {
+            removed = (byPayloadData.remove(device.payloadData()) != null) || removed;
+        }
+        if (removed) {
+            invalidations++;
+        }
+    }
+
+    // MARK:- Metrics
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BLEDeviceProfileCache{" +
+                "size=" + Math.max(byPseudoDeviceAddress.size(), byPayloadData.size()) +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", invalidations=" + invalidations +
+                '}';
+    }
+}
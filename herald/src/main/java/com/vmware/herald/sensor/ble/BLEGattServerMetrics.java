@@ -0,0 +1,87 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+/// Metrics of GATT server availability. A failed read window is the time between the GATT server
+/// being stopped and started again, e.g. on advert refresh or Bluetooth state change, where
+/// read and write requests from centrals will fail.
+public class BLEGattServerMetrics {
+    private final long createdAt;
+    private long starts = 0;
+    private long stops = 0;
+    private long failedReadWindows = 0;
+    private long failedReadWindowMillis = 0;
+    private long failedReads = 0;
+    /// Time GATT server was stopped, or -1 if it is running or has never been started
+    private long stoppedAt = -1;
+
+    public BLEGattServerMetrics() {
+        this(System.currentTimeMillis());
+    }
+
+    public BLEGattServerMetrics(final long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    /// GATT server has been started, ending a failed read window if it was previously stopped.
+    public synchronized void started(final long now) {
+        starts++;
+        if (stoppedAt >= 0) {
+            failedReadWindows++;
+            failedReadWindowMillis += Math.max(0, now - stoppedAt);
+            stoppedAt = -1;
+        }
+    }
+
+    /// GATT server has been stopped, starting a failed read window.
+    public synchronized void stopped(final long now) {
+        stops++;
+        if (stoppedAt < 0) {
+            stoppedAt = now;
+        }
+    }
+
+    /// Response to read request could not be sent.
+    public synchronized void readFailed() {
+        failedReads++;
+    }
+
+    public synchronized long starts() {
+        return starts;
+    }
+
+    public synchronized long stops() {
+        return stops;
+    }
+
+    public synchronized long failedReadWindows() {
+        return failedReadWindows;
+    }
+
+    public synchronized long failedReadWindowMillis() {
+        return failedReadWindowMillis;
+    }
+
+    public synchronized long failedReads() {
+        return failedReads;
+    }
+
+    /// Failed read windows per hour since creation.
+    public synchronized double failedReadWindowsPerHour(final long now) {
+        final long elapsed = Math.max(1, now - createdAt);
+        return failedReadWindows * 3600000d / elapsed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BLEGattServerMetrics{" +
+                "starts=" + starts +
+                ", stops=" + stops +
+                ", failedReadWindows=" + failedReadWindows +
+                ", failedReadWindowMillis=" + failedReadWindowMillis +
+                ", failedReads=" + failedReads +
+                '}';
+    }
+}
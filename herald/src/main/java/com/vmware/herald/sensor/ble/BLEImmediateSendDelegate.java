@@ -0,0 +1,15 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.TargetIdentifier;
+
+/// Delegate for receiving the result of each immediate send message, reported asynchronously
+/// once the message has been written to the target device or delivery has failed.
+public interface BLEImmediateSendDelegate {
+    /// Message data was delivered to target device, or failed
+    void immediateSend(Data data, TargetIdentifier targetIdentifier, boolean delivered);
+}
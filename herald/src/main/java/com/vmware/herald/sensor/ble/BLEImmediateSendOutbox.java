@@ -0,0 +1,258 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Callback;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.ImmediateSendData;
+import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/// Outbox of immediate send messages, holding a bounded queue of messages per device such that
+/// sending a message does not overwrite a message that has yet to be delivered. Messages are
+/// taken from the queue for writing to the signal characteristic once connected, optionally
+/// coalescing several encoded messages into a single write for receivers that reassemble writes, and the delivery result of each
+/// message is reported to the callback once the write has completed or the connection has ended.
+/// Messages are not retried after a failed connection or write.
+public class BLEImmediateSendOutbox {
+    /// Default maximum number of undelivered messages per device
+    public final static int defaultCapacity = 8;
+    private final int capacity;
+    /// Maximum length of a coalesced write, zero for one message per write
+    private final int coalescingLimit;
+    private final Callback<Delivery> callback;
+    private final Map<BLEDevice, Queue<Message>> queues = new HashMap<>();
+    private final Map<BLEDevice, List<Message>> inFlight = new HashMap<>();
+    private long delivered = 0;
+    private long failed = 0;
+    private long rejected = 0;
+    private long writes = 0;
+
+    public enum Result {
+        delivered, failed
+    }
+
+    /// Delivery result of a message
+    public final static class Delivery {
+        public final BLEDevice device;
+        public final Data data;
+        public final Result result;
+
+        public Delivery(final BLEDevice device, final Data data, final Result result) {
+            this.device = device;
+            this.data = data;
+            this.result = result;
+        }
+
+        @Override
+        public String toString() {
+            return "Delivery{" +
+                    "device=" + device +
+                    ", dataLength=" + data.value.length +
+                    ", result=" + result +
+                    '}';
+        }
+    }
+
+    private final static class Message {
+        private final Data data;
+        private final Data encoded;
+        /// Message was queued when a connection for delivery was initiated
+        private boolean attempted = false;
+
+        private Message(final Data data) {
+            this.data = data;
+            this.encoded = SignalCharacteristicData.encodeImmediateSend(new ImmediateSendData(data));
+        }
+    }
+
+    public BLEImmediateSendOutbox(final Callback<Delivery> callback) {
+        this(defaultCapacity, 0, callback);
+    }
+
+    public BLEImmediateSendOutbox(final int capacity, final int coalescingLimit, final Callback<Delivery> callback) {
+        this.capacity = Math.max(1, capacity);
+        this.coalescingLimit = Math.max(0, coalescingLimit);
+        this.callback = callback;
+    }
+
+    /// Add message to queue for device, returns false if the queue is full.
+    public synchronized boolean offer(final BLEDevice device, final Data data) {
+        Queue<Message> queue = queues.get(device);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queues.put(device, queue);
+        }
+        if (queue.size() >= capacity) {
+            rejected++;
+            return false;
+        }
+        queue.add(new Message(data));
+        return true;
+    }
+
+    /// Has undelivered messages for device?
+    public synchronized boolean pending(final BLEDevice device) {
+        final Queue<Message> queue = queues.get(device);
+        return queue != null && !queue.isEmpty();
+    }
+
+    /// Mark messages currently queued for device as attempted, prior to initiating a connection
+    /// for delivery. Attempted messages that are still queued when the connection ends have failed.
+    public synchronized void attempt(final BLEDevice device) {
+        final Queue<Message> queue = queues.get(device);
+        if (queue == null) {
+            return;
+        }
+        for (final Message message : queue) {
+            message.attempted = true;
+        }
+    }
+
+    /// Get encoded data for the next write to device, which may coalesce several messages up to
+    /// the coalescing limit if coalesce is true, i.e. the receiver of the write reassembles and
+    /// separates bundles. Returns null if there are no undelivered messages. Messages remain in
+    /// flight until completed() or connectionEnded() is called.
+    public synchronized Data next(final BLEDevice device, final boolean coalesce) {
+        final Queue<Message> queue = queues.get(device);
+        if (queue == null || queue.isEmpty()) {
+            return null;
+        }
+        List<Message> messages = inFlight.get(device);
+        if (messages == null) {
+            messages = new ArrayList<>(1);
+            inFlight.put(device, messages);
+        }
+        final Message first = queue.poll();
+        messages.add(first);
+        writes++;
+        if (!coalesce || coalescingLimit == 0 || queue.isEmpty()) {
+            return first.encoded;
+        }
+        // Concatenate encoded messages within limit into a single array
+        final int start = messages.size() - 1;
+        int length = first.encoded.value.length;
+        while (!queue.isEmpty() && length + queue.peek().encoded.value.length <= coalescingLimit) {
+            final Message message = queue.poll();
+            length += message.encoded.value.length;
+            messages.add(message);
+        }
+        if (messages.size() - start == 1) {
+            return first.encoded;
+        }
+        final byte[] data = new byte[length];
+        int offset = 0;
+        for (int i = start; i < messages.size(); i++) {
+            final byte[] encoded = messages.get(i).encoded.value;
+            System.arraycopy(encoded, 0, data, offset, encoded.length);
+            offset += encoded.length;
+        }
+        return new Data(data);
+    }
+
+    /// Write of in flight messages to device has completed.
+    public void completed(final BLEDevice device, final boolean success) {
+        final List<Delivery> deliveries = new ArrayList<>(1);
+        synchronized (this) {
+            final List<Message> messages = inFlight.remove(device);
+            if (messages != null) {
+                for (final Message message : messages) {
+                    deliveries.add(delivery(device, message, (success ? Result.delivered : Result.failed)));
+                }
+            }
+            removeEmptyQueue(device);
+        }
+        report(deliveries);
+    }
+
+    /// Connection to device has ended, or could not be established. Messages in flight and
+    /// messages that were queued when the connection was initiated have failed. Messages queued
+    /// since then remain pending for the next connection.
+    public void connectionEnded(final BLEDevice device) {
+        final List<Delivery> deliveries = new ArrayList<>(1);
+        synchronized (this) {
+            final List<Message> messages = inFlight.remove(device);
+            if (messages != null) {
+                for (final Message message : messages) {
+                    deliveries.add(delivery(device, message, Result.failed));
+                }
+            }
+            final Queue<Message> queue = queues.get(device);
+            if (queue != null) {
+                for (final Iterator<Message> iterator = queue.iterator(); iterator.hasNext(); ) {
+                    final Message message = iterator.next();
+                    if (message.attempted) {
+                        iterator.remove();
+                        deliveries.add(delivery(device, message, Result.failed));
+                    }
+                }
+            }
+            removeEmptyQueue(device);
+        }
+        report(deliveries);
+    }
+
+    private Delivery delivery(final BLEDevice device, final Message message, final Result result) {
+        if (result == Result.delivered) {
+            delivered++;
+        } else {
+            failed++;
+        }
+        return new Delivery(device, message.data, result);
+    }
+
+    private void removeEmptyQueue(final BLEDevice device) {
+        final Queue<Message> queue = queues.get(device);
+        if (queue != null && queue.isEmpty() && !inFlight.containsKey(device)) {
+            queues.remove(device);
+        }
+    }
+
+    /// Report deliveries outside of lock, as callback may send further messages.
+    private void report(final List<Delivery> deliveries) {
+        if (callback == null) {
+            return;
+        }
+        for (final Delivery delivery : deliveries) {
+            callback.accept(delivery);
+        }
+    }
+
+    // MARK:- Metrics
+
+    public synchronized long delivered() {
+        return delivered;
+    }
+
+    public synchronized long failed() {
+        return failed;
+    }
+
+    public synchronized long rejected() {
+        return rejected;
+    }
+
+    public synchronized long writes() {
+        return writes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BLEImmediateSendOutbox{" +
+                "devices=" + queues.size() +
+                ", delivered=" + delivered +
+                ", failed=" + failed +
+                ", rejected=" + rejected +
+                ", writes=" + writes +
+                '}';
+    }
+}
@@ -0,0 +1,116 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/// Lock free histogram of durations in milliseconds, using power of two buckets such that
+/// recording is a few atomic increments and a snapshot is a copy of a small fixed size array.
+/// Bucket 0 holds durations of 0ms, and bucket i holds durations in [2^(i-1), 2^i) ms, with the
+/// last bucket also holding all longer durations.
+public class BLELatencyHistogram {
+    /// Number of buckets, last bucket holds durations of 2^(buckets-2) ms (~35 minutes) and longer
+    public final static int buckets = 23;
+    private final AtomicLongArray counts = new AtomicLongArray(buckets);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /// Immutable copy of histogram at a point in time. Counts are read individually, thus a
+    /// snapshot taken while durations are being recorded may be off by the concurrent updates.
+    public final static class Snapshot {
+        private final long[] counts;
+        public final long count;
+        public final long sum;
+        public final long max;
+
+        private Snapshot(final long[] counts, final long count, final long sum, final long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /// Number of durations in bucket.
+        public long count(final int bucket) {
+            return counts[bucket];
+        }
+
+        /// Mean duration in milliseconds, or zero if empty.
+        public double mean() {
+            return (count == 0 ? 0 : sum / (double) count);
+        }
+
+        /// Upper bound of bucket containing the quantile (0..1), in milliseconds, or zero if empty.
+        public long quantile(final double q) {
+            long total = 0;
+            for (final long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(q * total));
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= rank) {
+                    return (i == counts.length - 1 ? max : upperBound(i));
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "{" +
+                    "count=" + count +
+                    ",mean=" + Math.round(mean()) +
+                    ",p50=" + quantile(0.5) +
+                    ",p95=" + quantile(0.95) +
+                    ",max=" + max +
+                    '}';
+        }
+    }
+
+    /// Bucket for duration.
+    public static int bucket(final long millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        return Math.min(buckets - 1, 64 - Long.numberOfLeadingZeros(millis));
+    }
+
+    /// Upper bound (exclusive) of durations in bucket, in milliseconds.
+    public static long upperBound(final int bucket) {
+        return 1L << bucket;
+    }
+
+    /// Record duration, negative durations (e.g. clock change) are recorded as zero.
+    public void add(final long millis) {
+        final long value = Math.max(0, millis);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until max is at least value
+        }
+    }
+
+    public Snapshot snapshot() {
+        final long[] copy = new long[buckets];
+        for (int i = 0; i < buckets; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.get(), sum.get(), max.get());
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,208 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.PayloadDataSupplier;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PayloadTimestamp;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/// Cache of payload data for serving read requests. A single payload is shared by all centrals
+/// for each time bucket, such that the supplier is called once per bucket rather than once per
+/// central, and the payload is refreshed when it rotates at the bucket boundary. Buckets are
+/// aligned to the Unix epoch, thus a bucket that divides a day is aligned with supplier periods
+/// that divide a day. The payload is pinned for each central for a short time to serve
+/// consecutive offset reads of a long payload consistently across a bucket boundary. Pins are
+/// held in a bounded LRU map, as centrals rotate addresses frequently and disconnection is not
+/// always observed. Read responses are slices of the payload from the requested offset, which are
+/// precomputed for the standard offsets of a long read at the default MTU and memoised for other
+/// offsets, such that serving reads does not allocate in steady state. The supplier is always
+/// called with a null device, thus suppliers that return a different payload for each device
+/// are not supported by the cache.
+public class BLEPayloadDataCache {
+    /// Default maximum number of centrals with pinned payload
+    public final static int defaultCapacity = 256;
+    /// Default time interval for serving the same payload to a central
+    public final static TimeInterval defaultPinExpiry = TimeInterval.minute;
+    /// Bytes of payload per read response at the default ATT MTU of 23 bytes
+    private final static int defaultReadLength = 22;
+    private final PayloadDataSupplier payloadDataSupplier;
+    private final long bucketMillis;
+    private final long pinExpiryMillis;
+    private final Map<String, Pin> pins;
+    private long bucket = Long.MIN_VALUE;
+    private Slices slices = null;
+    private long supplierCalls = 0;
+    private long sliceCopies = 0;
+    private long reads = 0;
+    private long readsSecond = 0;
+    private long readsInSecond = 0;
+    private long readsPerSecond = 0;
+
+    /// Payload and read response slices from each offset
+    private final static class Slices {
+        private final PayloadData payloadData;
+        private final byte[][] slices;
+
+        private Slices(final PayloadData payloadData) {
+            this.payloadData = payloadData;
+            this.slices = new byte[payloadData.value.length + 1][];
+        }
+    }
+
+    private final static class Pin {
+        private final Slices slices;
+        private final long pinnedAt;
+
+        private Pin(final Slices slices, final long pinnedAt) {
+            this.slices = slices;
+            this.pinnedAt = pinnedAt;
+        }
+    }
+
+    public BLEPayloadDataCache(final PayloadDataSupplier payloadDataSupplier) {
+        this(payloadDataSupplier, BLESensorConfiguration.payloadDataCacheTimeInterval, defaultCapacity, defaultPinExpiry);
+    }
+
+    public BLEPayloadDataCache(final PayloadDataSupplier payloadDataSupplier, final TimeInterval bucket, final int capacity, final TimeInterval pinExpiry) {
+        this.payloadDataSupplier = payloadDataSupplier;
+        this.bucketMillis = Math.max(1, bucket.millis());
+        this.pinExpiryMillis = pinExpiry.millis();
+        this.pins = new LinkedHashMap<String, Pin>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pin> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /// Shared payload for current time bucket.
+    public synchronized PayloadData payloadData(final long now) {
+        final Slices slices = slices(now);
+        return (slices == null ? null : slices.payloadData);
+    }
+
+    private Slices slices(final long now) {
+        final long currentBucket = now / bucketMillis;
+        if (slices == null || currentBucket != bucket) {
+            final PayloadData payloadData = payloadDataSupplier.payload(new PayloadTimestamp(new Date(now)), null);
+            bucket = currentBucket;
+            supplierCalls++;
+            slices = (payloadData == null ? null : new Slices(payloadData));
+            // Precompute slices for standard offsets
+            if (slices != null) {
+                for (int offset = 0; offset < payloadData.value.length; offset += defaultReadLength) {
+                    slice(slices, offset);
+                }
+            }
+        }
+        return slices;
+    }
+
+    /// Slices for read request from central, which are the slices of the payload pinned for the
+    /// central if the pin has not expired, or the shared payload for current time bucket.
+    private Slices slices(final String central, final long now) {
+        final Pin pin = pins.get(central);
+        if (pin != null && now - pin.pinnedAt < pinExpiryMillis) {
+            return pin.slices;
+        }
+        final Slices slices = slices(now);
+        if (slices != null) {
+            pins.put(central, new Pin(slices, now));
+        }
+        return slices;
+    }
+
+    private byte[] slice(final Slices slices, final int offset) {
+        byte[] slice = slices.slices[offset];
+        if (slice == null) {
+            final byte[] value = slices.payloadData.value;
+            if (offset == 0) {
+                slice = value;
+            } else {
+                slice = Arrays.copyOfRange(value, offset, value.length);
+                sliceCopies++;
+            }
+            slices.slices[offset] = slice;
+        }
+        return slice;
+    }
+
+    /// Payload for read request from central, which is the payload pinned for the central if the
+    /// pin has not expired, or the shared payload for current time bucket.
+    public synchronized PayloadData payloadData(final String central, final long now) {
+        final Slices slices = slices(central, now);
+        return (slices == null ? null : slices.payloadData);
+    }
+
+    /// Response for read request from central at offset, which is the payload from offset to end,
+    /// or null if the offset is invalid or payload is unavailable. The response is shared and must
+    /// not be modified.
+    public synchronized byte[] read(final String central, final int offset, final long now) {
+        final long second = now / 1000;
+        if (second != readsSecond) {
+            readsPerSecond = (second == readsSecond + 1 ? readsInSecond : 0);
+            readsSecond = second;
+            readsInSecond = 0;
+        }
+        readsInSecond++;
+        reads++;
+        final Slices slices = slices(central, now);
+        if (slices == null || offset < 0 || offset > slices.payloadData.value.length) {
+            return null;
+        }
+        return slice(slices, offset);
+    }
+
+    /// Remove pinned payload for central, e.g. on disconnection.
+    public synchronized void remove(final String central) {
+        pins.remove(central);
+    }
+
+    /// Number of centrals with pinned payload.
+    public synchronized int size() {
+        return pins.size();
+    }
+
+    /// Number of calls to payload data supplier.
+    public synchronized long supplierCalls() {
+        return supplierCalls;
+    }
+
+    /// Number of slices copied from payloads.
+    public synchronized long sliceCopies() {
+        return sliceCopies;
+    }
+
+    /// Number of read requests served.
+    public synchronized long reads() {
+        return reads;
+    }
+
+    /// Number of read requests served in the last complete second.
+    public synchronized long readsPerSecond(final long now) {
+        final long second = now / 1000;
+        if (second == readsSecond) {
+            return readsPerSecond;
+        }
+        return (second == readsSecond + 1 ? readsInSecond : 0);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BLEPayloadDataCache{" +
+                "centrals=" + pins.size() +
+                ", supplierCalls=" + supplierCalls +
+                ", sliceCopies=" + sliceCopies +
+                ", reads=" + reads +
+                ", readsPerSecond=" + readsPerSecond(System.currentTimeMillis()) +
+                '}';
+    }
+}
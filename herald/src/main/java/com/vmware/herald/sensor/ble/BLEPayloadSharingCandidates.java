@@ -0,0 +1,109 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Devices that may have their payload shared with other devices, in descending order of
+/// last update time. The list is maintained incrementally from device attribute update events
+/// to avoid scanning and sorting all devices every time payload sharing data is requested.
+public class BLEPayloadSharingCandidates {
+    private final Map<BLEDevice, Node> nodes = new HashMap<>();
+    /// Most recently updated candidate
+    private Node head = null;
+    /// Least recently updated candidate
+    private Node tail = null;
+
+    private final static class Node {
+        private final BLEDevice device;
+        private long updatedAt = 0;
+        private Node previous = null, next = null;
+
+        private Node(final BLEDevice device) {
+            this.device = device;
+        }
+    }
+
+    /// Can payload of this device be shared? This excludes time limit which is checked on use.
+    /// - Device has payload
+    /// - Device is iOS or receive only (Samsung J6)
+    /// - Device is HERALD
+    public static boolean shareable(final BLEDevice device) {
+        return device.payloadData() != null
+                && (device.operatingSystem() == BLEDeviceOperatingSystem.ios || device.receiveOnly())
+                && device.signalCharacteristic() != null;
+    }
+
+    /// Add or move device to the front of the list if it is shareable, else remove it from the list.
+    public synchronized void update(final BLEDevice device) {
+        if (!shareable(device)) {
+            remove(device);
+            return;
+        }
+        Node node = nodes.get(device);
+        if (node == null) {
+            node = new Node(device);
+            nodes.put(device, node);
+        } else {
+            unlink(node);
+        }
+        node.updatedAt = device.lastUpdatedAt.getTime();
+        // Link at head
+        node.next = head;
+        if (head != null) {
+            head.previous = node;
+        }
+        head = node;
+        if (tail == null) {
+            tail = node;
+        }
+    }
+
+    /// Remove device from list.
+    public synchronized void remove(final BLEDevice device) {
+        final Node node = nodes.remove(device);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    /// Get candidates that have been updated since a given time, most recently updated first.
+    /// Candidates that have not been updated since this time are pruned from the list, they
+    /// will be added to the list again on their next update.
+    public synchronized List<BLEDevice> updatedSince(final long time) {
+        final List<BLEDevice> devices = new ArrayList<>();
+        for (Node node = head; node != null && node.updatedAt >= time; node = node.next) {
+            devices.add(node.device);
+        }
+        while (tail != null && tail.updatedAt < time) {
+            nodes.remove(tail.device);
+            unlink(tail);
+        }
+        return devices;
+    }
+
+    /// Number of candidates in list, including candidates that have not been pruned yet.
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    private void unlink(final Node node) {
+        if (node.previous != null) {
+            node.previous.next = node.next;
+        } else {
+            head = node.next;
+        }
+        if (node.next != null) {
+            node.next.previous = node.previous;
+        } else {
+            tail = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+    }
+}
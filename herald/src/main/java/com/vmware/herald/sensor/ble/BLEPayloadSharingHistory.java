@@ -0,0 +1,63 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/// Payload data already shared with a peer, for sharing new payloads first. Entries expire
+/// after a time interval (default BLESensorConfiguration.payloadSharingExpiryTimeInterval),
+/// and the number of entries is bounded by capacity, evicting the oldest entries first, to
+/// keep memory use per peer constant for long lived peers.
+public class BLEPayloadSharingHistory {
+    /// Default maximum number of payloads to remember per peer
+    public final static int defaultCapacity = 1024;
+    private final int capacity;
+    private final TimeInterval expiry;
+    /// Payload data and time shared, in order of time shared (oldest first)
+    private final LinkedHashMap<PayloadData, Long> sharedAt = new LinkedHashMap<>();
+
+    public BLEPayloadSharingHistory() {
+        this(defaultCapacity, BLESensorConfiguration.payloadSharingExpiryTimeInterval);
+    }
+
+    public BLEPayloadSharingHistory(final int capacity, final TimeInterval expiry) {
+        this.capacity = capacity;
+        this.expiry = expiry;
+    }
+
+    /// Has payload data been shared with peer within expiry time interval?
+    public synchronized boolean contains(final PayloadData payloadData) {
+        final Long time = sharedAt.get(payloadData);
+        return time != null && System.currentTimeMillis() - time < expiry.millis();
+    }
+
+    /// Record payload data as shared with peer now.
+    public synchronized void add(final PayloadData payloadData) {
+        final long now = System.currentTimeMillis();
+        // Move to end of insertion order
+        sharedAt.remove(payloadData);
+        sharedAt.put(payloadData, now);
+        // Remove expired and excess entries from the front
+        final Iterator<Map.Entry<PayloadData, Long>> iterator = sharedAt.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<PayloadData, Long> entry = iterator.next();
+            if (sharedAt.size() > capacity || now - entry.getValue() >= expiry.millis()) {
+                iterator.remove();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /// Number of payloads remembered, including expired payloads that have not been removed yet.
+    public synchronized int size() {
+        return sharedAt.size();
+    }
+}
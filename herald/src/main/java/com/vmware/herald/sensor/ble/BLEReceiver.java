@@ -23,4 +23,10 @@ public interface BLEReceiver extends Sensor {
 
     // Immediate send to all (connected / recent / nearby)
     boolean immediateSendAll(Data data);
+
+    /// Add delegate for receiving immediate send delivery results.
+    void add(BLEImmediateSendDelegate delegate);
+
+    /// Metrics of scan and process pipeline, take snapshot for polling and export.
+    BLEReceiverMetrics metrics();
 }
@@ -0,0 +1,206 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Metrics of the receiver scan and process pipeline, for polling and export by the app. All
+/// metrics are recorded and read without locks, such that a snapshot can be taken frequently
+/// (e.g. every second) without affecting the scan loop or connections.
+public class BLEReceiverMetrics {
+    /// Stages of the scan and process pipeline
+    public enum Stage {
+        /// Process scan results into devices
+        didDiscover,
+        /// Remove devices not seen recently from database
+        removeExpiredDevices,
+        /// Reset connection state of devices with expired connections
+        correctConnectionStatus,
+        /// Connect to discovered devices with pending tasks
+        connect,
+        /// Process adverts of legacy advert only protocol devices
+        legacyAdvertOnlyProtocolService,
+        /// All stages of processing scan results
+        processScanResults,
+        /// Connection to a device, from connect to connected
+        connectDevice,
+        /// Processing of a device, from connect to disconnected
+        processDevice
+    }
+
+    private final Map<Stage, BLELatencyHistogram> stages;
+    private final ConcurrentMap<BLEDeviceOperatingSystem, ConcurrentMap<String, BLELatencyHistogram>> tasks = new ConcurrentHashMap<>();
+    private final AtomicLong scanResultsIn = new AtomicLong(0);
+    private final AtomicLong scanResultsOut = new AtomicLong(0);
+    private final AtomicLong scanResultsDropped = new AtomicLong(0);
+    private final AtomicLong devicesSkippedForBudget = new AtomicLong(0);
+    private final Map<BLEScanDutyCycle.Decision, AtomicLong> scanDutyCycleDecisions;
+    private volatile BLEScanDutyCycle.Decision scanDutyCycleLastDecision = BLEScanDutyCycle.Decision.hold;
+    private volatile long scanRestDurationMillis = 0;
+    private volatile long scanOffDurationMillis = 0;
+    private volatile double discoveryRatePerMinute = 0;
+
+    /// Immutable copy of metrics at a point in time
+    public final static class Snapshot {
+        public final long timestamp;
+        public final Map<Stage, BLELatencyHistogram.Snapshot> stages;
+        public final Map<BLEDeviceOperatingSystem, Map<String, BLELatencyHistogram.Snapshot>> tasks;
+        /// Scan results received from scanner
+        public final long scanResultsIn;
+        /// Scan results processed, after coalescing by address
+        public final long scanResultsOut;
+        /// Scan results dropped as buffer was full
+        public final long scanResultsDropped;
+        /// Devices with pending tasks that were not connected within the scan process time limit
+        public final long devicesSkippedForBudget;
+        /// Number of scan cycles by scan duty cycle decision (lengthen, shorten, reset, hold)
+        public final Map<BLEScanDutyCycle.Decision, Long> scanDutyCycleDecisions;
+        /// Scan duty cycle decision after the last scan cycle
+        public final BLEScanDutyCycle.Decision scanDutyCycleLastDecision;
+        /// Current scan rest duration, as set by the scan duty cycle
+        public final long scanRestDurationMillis;
+        /// Current scan off duration, as set by the scan duty cycle
+        public final long scanOffDurationMillis;
+        /// New devices per minute in the last scan cycle
+        public final double discoveryRatePerMinute;
+
+        private Snapshot(final long timestamp, final Map<Stage, BLELatencyHistogram.Snapshot> stages, final Map<BLEDeviceOperatingSystem, Map<String, BLELatencyHistogram.Snapshot>> tasks, final long scanResultsIn, final long scanResultsOut, final long scanResultsDropped, final long devicesSkippedForBudget, final Map<BLEScanDutyCycle.Decision, Long> scanDutyCycleDecisions, final BLEScanDutyCycle.Decision scanDutyCycleLastDecision, final long scanRestDurationMillis, final long scanOffDurationMillis, final double discoveryRatePerMinute) {
+            this.timestamp = timestamp;
+            this.stages = stages;
+            this.tasks = tasks;
+            this.scanResultsIn = scanResultsIn;
+            this.scanResultsOut = scanResultsOut;
+            this.scanResultsDropped = scanResultsDropped;
+            this.devicesSkippedForBudget = devicesSkippedForBudget;
+            this.scanDutyCycleDecisions = scanDutyCycleDecisions;
+            this.scanDutyCycleLastDecision = scanDutyCycleLastDecision;
+            this.scanRestDurationMillis = scanRestDurationMillis;
+            this.scanOffDurationMillis = scanOffDurationMillis;
+            this.discoveryRatePerMinute = discoveryRatePerMinute;
+        }
+
+        @Override
+        public String toString() {
+            return "BLEReceiverMetrics{" +
+                    "stages=" + stages +
+                    ", tasks=" + tasks +
+                    ", scanResultsIn=" + scanResultsIn +
+                    ", scanResultsOut=" + scanResultsOut +
+                    ", scanResultsDropped=" + scanResultsDropped +
+                    ", devicesSkippedForBudget=" + devicesSkippedForBudget +
+                    ", scanDutyCycleDecisions=" + scanDutyCycleDecisions +
+                    ", scanDutyCycleLastDecision=" + scanDutyCycleLastDecision +
+                    ", scanRestDurationMillis=" + scanRestDurationMillis +
+                    ", scanOffDurationMillis=" + scanOffDurationMillis +
+                    ", discoveryRatePerMinute=" + discoveryRatePerMinute +
+                    '}';
+        }
+    }
+
+    public BLEReceiverMetrics() {
+        final Map<Stage, BLELatencyHistogram> stages = new EnumMap<>(Stage.class);
+        for (final Stage stage : Stage.values()) {
+            stages.put(stage, new BLELatencyHistogram());
+        }
+        // Never modified after construction, thus safe for concurrent reads
+        this.stages = Collections.unmodifiableMap(stages);
+        final Map<BLEScanDutyCycle.Decision, AtomicLong> scanDutyCycleDecisions = new EnumMap<>(BLEScanDutyCycle.Decision.class);
+        for (final BLEScanDutyCycle.Decision decision : BLEScanDutyCycle.Decision.values()) {
+            scanDutyCycleDecisions.put(decision, new AtomicLong(0));
+        }
+        this.scanDutyCycleDecisions = Collections.unmodifiableMap(scanDutyCycleDecisions);
+    }
+
+    /// Histogram of durations for stage.
+    public BLELatencyHistogram stage(final Stage stage) {
+        return stages.get(stage);
+    }
+
+    /// Record duration of stage.
+    public void stage(final Stage stage, final long millis) {
+        stages.get(stage).add(millis);
+    }
+
+    /// Record duration of task performed on device with operating system.
+    public void task(final BLEDeviceOperatingSystem operatingSystem, final String task, final long millis) {
+        ConcurrentMap<String, BLELatencyHistogram> operatingSystemTasks = tasks.get(operatingSystem);
+        if (operatingSystemTasks == null) {
+            final ConcurrentMap<String, BLELatencyHistogram> newOperatingSystemTasks = new ConcurrentHashMap<>();
+            operatingSystemTasks = tasks.putIfAbsent(operatingSystem, newOperatingSystemTasks);
+            if (operatingSystemTasks == null) {
+                operatingSystemTasks = newOperatingSystemTasks;
+            }
+        }
+        BLELatencyHistogram histogram = operatingSystemTasks.get(task);
+        if (histogram == null) {
+            final BLELatencyHistogram newHistogram = new BLELatencyHistogram();
+            histogram = operatingSystemTasks.putIfAbsent(task, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        histogram.add(millis);
+    }
+
+    public void scanResultsIn(final long count) {
+        scanResultsIn.addAndGet(count);
+    }
+
+    public void scanResultsOut(final long count) {
+        scanResultsOut.addAndGet(count);
+    }
+
+    public void scanResultsDropped(final long count) {
+        scanResultsDropped.addAndGet(count);
+    }
+
+    public void devicesSkippedForBudget(final long count) {
+        devicesSkippedForBudget.addAndGet(count);
+    }
+
+    /// Record scan duty cycle decision and resulting durations after a scan cycle.
+    public void scanDutyCycle(final BLEScanDutyCycle.Decision decision, final long restDurationMillis, final long offDurationMillis, final double discoveryRatePerMinute) {
+        scanDutyCycleDecisions.get(decision).incrementAndGet();
+        scanDutyCycleLastDecision = decision;
+        scanRestDurationMillis = restDurationMillis;
+        scanOffDurationMillis = offDurationMillis;
+        this.discoveryRatePerMinute = discoveryRatePerMinute;
+    }
+
+    public Snapshot snapshot() {
+        final Map<Stage, BLELatencyHistogram.Snapshot> stageSnapshots = new EnumMap<>(Stage.class);
+        for (final Map.Entry<Stage, BLELatencyHistogram> entry : stages.entrySet()) {
+            stageSnapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        final Map<BLEDeviceOperatingSystem, Map<String, BLELatencyHistogram.Snapshot>> taskSnapshots = new EnumMap<>(BLEDeviceOperatingSystem.class);
+        for (final Map.Entry<BLEDeviceOperatingSystem, ConcurrentMap<String, BLELatencyHistogram>> entry : tasks.entrySet()) {
+            final Map<String, BLELatencyHistogram.Snapshot> operatingSystemTasks = new HashMap<>();
+            for (final Map.Entry<String, BLELatencyHistogram> task : entry.getValue().entrySet()) {
+                operatingSystemTasks.put(task.getKey(), task.getValue().snapshot());
+            }
+            taskSnapshots.put(entry.getKey(), Collections.unmodifiableMap(operatingSystemTasks));
+        }
+        final Map<BLEScanDutyCycle.Decision, Long> scanDutyCycleDecisionCounts = new EnumMap<>(BLEScanDutyCycle.Decision.class);
+        for (final Map.Entry<BLEScanDutyCycle.Decision, AtomicLong> entry : scanDutyCycleDecisions.entrySet()) {
+            scanDutyCycleDecisionCounts.put(entry.getKey(), entry.getValue().get());
+        }
+        return new Snapshot(System.currentTimeMillis(),
+                Collections.unmodifiableMap(stageSnapshots), Collections.unmodifiableMap(taskSnapshots),
+                scanResultsIn.get(), scanResultsOut.get(), scanResultsDropped.get(), devicesSkippedForBudget.get(),
+                Collections.unmodifiableMap(scanDutyCycleDecisionCounts), scanDutyCycleLastDecision,
+                scanRestDurationMillis, scanOffDurationMillis, discoveryRatePerMinute);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,156 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.data.ConcreteSensorLogger;
+import com.vmware.herald.sensor.data.SensorLogger;
+
+/// Adaptive scan duty cycle for the scan loop, adjusting the rest period between stopping scan
+/// and processing scan results, and the off period between processing and starting the next scan,
+/// according to observed device density. Rest and off periods are doubled after each scan cycle
+/// without new devices or pending work, up to the maximum, to save power in quiet environments.
+/// Periods are reset to the minimum when new devices appear, and halved while there is pending
+/// work, to keep up in busy environments. Setting maximum equal to minimum fixes the duty cycle.
+public class BLEScanDutyCycle {
+    private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.BLEScanDutyCycle");
+    private final long restDurationMinimumMillis;
+    private final long restDurationMaximumMillis;
+    private final long offDurationMinimumMillis;
+    private final long offDurationMaximumMillis;
+    private long restDurationMillis;
+    private long offDurationMillis;
+    private Decision lastDecision = Decision.hold;
+    private long lastUpdateAt = -1;
+    private double discoveryRatePerMinute = 0;
+    private long lengthened = 0;
+    private long shortened = 0;
+    private long reset = 0;
+    private long held = 0;
+
+    /// Duty cycle adjustment after a scan cycle
+    public enum Decision {
+        /// No change, periods are already at the bound
+        hold,
+        /// Periods doubled because there were no new devices or pending work
+        lengthen,
+        /// Periods halved because there was pending work
+        shorten,
+        /// Periods reset to minimum because new devices were discovered
+        reset
+    }
+
+    public BLEScanDutyCycle() {
+        this(BLESensorConfiguration.scanRestTimeIntervalMinimum.millis(), BLESensorConfiguration.scanRestTimeIntervalMaximum.millis(),
+                BLESensorConfiguration.scanOffTimeIntervalMinimum.millis(), BLESensorConfiguration.scanOffTimeIntervalMaximum.millis());
+    }
+
+    public BLEScanDutyCycle(final long restDurationMinimumMillis, final long restDurationMaximumMillis, final long offDurationMinimumMillis, final long offDurationMaximumMillis) {
+        this.restDurationMinimumMillis = restDurationMinimumMillis;
+        this.restDurationMaximumMillis = Math.max(restDurationMinimumMillis, restDurationMaximumMillis);
+        this.offDurationMinimumMillis = offDurationMinimumMillis;
+        this.offDurationMaximumMillis = Math.max(offDurationMinimumMillis, offDurationMaximumMillis);
+        this.restDurationMillis = restDurationMinimumMillis;
+        this.offDurationMillis = offDurationMinimumMillis;
+    }
+
+    /// Time to wait after stopping scan before processing scan results.
+    public synchronized long restDurationMillis() {
+        return restDurationMillis;
+    }
+
+    /// Time to wait after processing scan results before starting the next scan.
+    public synchronized long offDurationMillis() {
+        return offDurationMillis;
+    }
+
+    /// Adjust duty cycle given the outcome of processing scan results at time now. New devices
+    /// are devices that were not discovered in the previous scan cycle, and pending devices are
+    /// devices with tasks that could not be completed within the processing time limit.
+    public synchronized Decision update(final long now, final int newDevices, final int pendingDevices) {
+        if (lastUpdateAt >= 0 && now > lastUpdateAt) {
+            discoveryRatePerMinute = newDevices * 60000d / (now - lastUpdateAt);
+        }
+        lastUpdateAt = now;
+        final long previousRestDurationMillis = restDurationMillis;
+        final long previousOffDurationMillis = offDurationMillis;
+        Decision decision;
+        if (newDevices > 0) {
+            restDurationMillis = restDurationMinimumMillis;
+            offDurationMillis = offDurationMinimumMillis;
+            decision = Decision.reset;
+        } else if (pendingDevices > 0) {
+            restDurationMillis = Math.max(restDurationMinimumMillis, restDurationMillis / 2);
+            offDurationMillis = Math.max(offDurationMinimumMillis, offDurationMillis / 2);
+            decision = Decision.shorten;
+        } else {
+            restDurationMillis = Math.min(restDurationMaximumMillis, Math.max(1, restDurationMillis * 2));
+            offDurationMillis = Math.min(offDurationMaximumMillis, Math.max(1, offDurationMillis * 2));
+            decision = Decision.lengthen;
+        }
+        if (restDurationMillis == previousRestDurationMillis && offDurationMillis == previousOffDurationMillis) {
+            decision = Decision.hold;
+        }
+        switch (decision) {
+            case lengthen:
+                lengthened++;
+                break;
+            case shorten:
+                shortened++;
+                break;
+            case reset:
+                reset++;
+                break;
+            default:
+                held++;
+                break;
+        }
+        lastDecision = decision;
+        if (decision != Decision.hold) {
+            logger.debug("update (decision={},newDevices={},pendingDevices={},dutyCycle={})", decision, newDevices, pendingDevices, this);
+        }
+        return decision;
+    }
+
+    // MARK:- Metrics
+
+    public synchronized Decision lastDecision() {
+        return lastDecision;
+    }
+
+    /// New devices per minute in the last scan cycle.
+    public synchronized double discoveryRatePerMinute() {
+        return discoveryRatePerMinute;
+    }
+
+    public synchronized long lengthened() {
+        return lengthened;
+    }
+
+    public synchronized long shortened() {
+        return shortened;
+    }
+
+    public synchronized long reset() {
+        return reset;
+    }
+
+    public synchronized long held() {
+        return held;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BLEScanDutyCycle{" +
+                "rest=" + restDurationMillis + "ms" +
+                ", off=" + offDurationMillis + "ms" +
+                ", lastDecision=" + lastDecision +
+                ", discoveryRate=" + discoveryRatePerMinute + "/min" +
+                ", lengthened=" + lengthened +
+                ", shortened=" + shortened +
+                ", reset=" + reset +
+                ", held=" + held +
+                '}';
+    }
+}
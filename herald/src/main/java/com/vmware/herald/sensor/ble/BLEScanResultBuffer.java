@@ -0,0 +1,138 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/// Bounded buffer of scan results between scan callbacks and scan result processing, keyed by
+/// device address. Repeated scan results for the same address are coalesced into a single entry
+/// holding the latest record and aggregated RSSI statistics, thus processing cost scales with the
+/// number of distinct devices rather than the number of scan callbacks. Results for new addresses
+/// are dropped once the buffer is at capacity, and counted for diagnosis.
+public class BLEScanResultBuffer<R> {
+    /// Default maximum number of distinct addresses held between drains
+    public final static int defaultCapacity = 1024;
+    private final int capacity;
+    /// Entries in order of first appearance since last drain
+    private LinkedHashMap<String, Entry<R>> entries = new LinkedHashMap<>();
+    private long received = 0;
+    private long coalesced = 0;
+    private long dropped = 0;
+
+    /// Latest scan record and RSSI statistics for an address since last drain
+    public final static class Entry<R> {
+        public final String address;
+        private R record;
+        private int rssiCount = 0;
+        private int rssiMax = Integer.MIN_VALUE;
+        private long rssiSum = 0;
+
+        private Entry(final String address) {
+            this.address = address;
+        }
+
+        /// Latest scan record
+        public R record() {
+            return record;
+        }
+
+        /// Number of scan results coalesced into this entry
+        public int rssiCount() {
+            return rssiCount;
+        }
+
+        public int rssiMax() {
+            return rssiMax;
+        }
+
+        public double rssiMean() {
+            return (rssiCount == 0 ? 0 : rssiSum / (double) rssiCount);
+        }
+
+        private void add(final R record, final int rssi) {
+            this.record = record;
+            rssiCount++;
+            rssiSum += rssi;
+            if (rssi > rssiMax) {
+                rssiMax = rssi;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "address=" + address +
+                    ", count=" + rssiCount +
+                    ", max=" + rssiMax +
+                    ", mean=" + rssiMean() +
+                    '}';
+        }
+    }
+
+    public BLEScanResultBuffer() {
+        this(defaultCapacity);
+    }
+
+    public BLEScanResultBuffer(final int capacity) {
+        this.capacity = capacity;
+    }
+
+    /// Add scan record for address, returns false if record was dropped because buffer is full.
+    public synchronized boolean add(final String address, final R record, final int rssi) {
+        received++;
+        Entry<R> entry = entries.get(address);
+        if (entry == null) {
+            if (entries.size() >= capacity) {
+                dropped++;
+                return false;
+            }
+            entry = new Entry<>(address);
+            entries.put(address, entry);
+        } else {
+            coalesced++;
+        }
+        entry.add(record, rssi);
+        return true;
+    }
+
+    /// Get and remove all entries, in order of first appearance.
+    public synchronized List<Entry<R>> drain() {
+        final List<Entry<R>> drained = new ArrayList<>(entries.values());
+        entries = new LinkedHashMap<>();
+        return drained;
+    }
+
+    /// Number of distinct addresses held.
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /// Total number of scan results received.
+    public synchronized long received() {
+        return received;
+    }
+
+    /// Total number of scan results merged into an existing entry.
+    public synchronized long coalesced() {
+        return coalesced;
+    }
+
+    /// Total number of scan results dropped because buffer was full.
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BLEScanResultBuffer{" +
+                "size=" + entries.size() +
+                ", received=" + received +
+                ", coalesced=" + coalesced +
+                ", dropped=" + dropped +
+                '}';
+    }
+}
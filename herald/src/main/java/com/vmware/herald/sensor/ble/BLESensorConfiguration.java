@@ -133,9 +133,71 @@ public class BLESensorConfiguration {
     /// Expiry time for shared payloads, to ensure only recently seen payloads are shared
     public static TimeInterval payloadSharingExpiryTimeInterval = new TimeInterval(5 * TimeInterval.minute.value);
 
+    /// Batch window for database create/update/delete events delivered to delegates
+    /// - Updates are coalesced per device and attribute within the window, except RSSI updates
+    ///   as every RSSI update is a measurement
+    /// - Set to .zero to deliver events as soon as possible (default), this still coalesces
+    ///   updates that occur before the pending events are delivered
+    /// - Example : 1 second means delegates receive events at most once per second
+    public static TimeInterval databaseEventBatchTimeInterval = TimeInterval.zero;
+
+    /// Warm start cache for restoring recently seen devices after process restart or Bluetooth power cycle
+    /// - Set to .never to disable this feature (default)
+    /// - Set time interval N to save recently seen devices to cache every N seconds
+    /// - Devices are restored by pseudo device address on discovery, thus skipping connections for reading
+    ///   operating system, payload, model and device name that are already known
+    public static TimeInterval deviceCacheSaveTimeInterval = TimeInterval.never;
+
+    /// Maximum number of concurrent connections for processing discovered devices
+    /// - Set to 1 to connect to one device at a time (default)
+    /// - Most Android devices can hold several concurrent connections, allowing more devices to be processed per scan cycle
+    /// - Setting must be applied before BLESensor is created
+    public static int concurrentConnectionLimit = 1;
+
+    /// Scan duty cycle bounds for the rest period between stopping scan and processing scan results,
+    /// and the off period between processing scan results and starting the next scan
+    /// - Periods are lengthened up to the maximum when no new devices are discovered and there is no pending work
+    /// - Periods are shortened down to the minimum when new devices are discovered or there is pending work
+    /// - Set maximum equal to minimum for a fixed duty cycle (default)
+    public static TimeInterval scanRestTimeIntervalMinimum = TimeInterval.seconds(1);
+    public static TimeInterval scanRestTimeIntervalMaximum = TimeInterval.seconds(1);
+    public static TimeInterval scanOffTimeIntervalMinimum = TimeInterval.seconds(2);
+    public static TimeInterval scanOffTimeIntervalMaximum = TimeInterval.seconds(2);
+
+    /// Cache device capability profiles (characteristic layout, model, device name) established by service
+    /// discovery, keyed by pseudo device address and payload data
+    /// - Set to false to rely on service discovery in each connection only (default)
+    /// - Set to true to plan tasks for re-identified devices before connection, e.g. skip payload read for
+    ///   confirming operating system, and skip introspection reads for model and device name
+    public static boolean deviceProfileCacheEnabled = false;
+
+    /// Maximum number of undelivered immediate send messages queued per device
+    /// - Messages beyond capacity are rejected, i.e. immediateSend() returns false
+    public static int immediateSendQueueCapacity = BLEImmediateSendOutbox.defaultCapacity;
+
+    /// Coalesce immediate send messages queued for a device into a single signal characteristic write
+    /// - Set to false to write one message at a time, as expected by earlier versions of the receiving device (default)
+    /// - Set to true to reduce writes when sending several messages to devices running this version or later
+    /// - Only applies to Android devices, iOS devices decode one message per write and always receive one message at a time
+    public static boolean immediateSendCoalescingEnabled = false;
+
+    /// Time interval for sharing payload data between all centrals reading the payload characteristic
+    /// - Payload data supplier is called once per time interval, rather than once per central
+    /// - Payload data supplier is called without a device, as the same payload is served to all centrals
+    /// - Set to the payload rotation period of the payload data supplier, time intervals are aligned to the start of a day
+    /// - Default is 6 minutes, as used by contact identifiers in the simple payload
+    /// - Setting must be applied before BLESensor is created
+    public static TimeInterval payloadDataCacheTimeInterval = TimeInterval.minutes(6);
+
     /// Advert refresh time interval
     public static TimeInterval advertRefreshTimeInterval = TimeInterval.minutes(15);
 
+    /// Keep GATT server and its services alive across advert refresh, only rotating the advert and pseudo device address
+    /// - Set to false to restart GATT server on every advert refresh (default)
+    /// - Set to true to avoid failed reads by centrals while the GATT server is restarted on every advert refresh
+    /// - GATT server is always restarted on Bluetooth state change and after advert start failure
+    public static boolean persistentGattServerEnabled = false;
+
     /// Randomisation method for generating the pseudo device addresses, see PseudoDeviceAddress and RandomSource for details.
     /// - Set to Random for reliable continuous operation, validated
     /// - Other methods will cause blocking after 4-8 hours and interrupt operation on idle devices
@@ -0,0 +1,94 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/// Hashed timing wheel for finding items that have reached their deadline without scanning all
+/// items. Items are hashed into slots by deadline tick, and expire() only visits the slots for
+/// ticks that have elapsed since the last call, making it O(expired) for deadlines within the
+/// wheel span (tick x slots). Items with later deadlines are kept until their round comes.
+public class BLETimingWheel<T> {
+    private final long tickMillis;
+    private final List<Set<T>> slots;
+    private final Map<T, Entry> entries = new HashMap<>();
+    /// Slots up to and including this tick have been fully processed
+    private long lastTick;
+
+    private final static class Entry {
+        private final long deadline;
+        private final int slot;
+
+        private Entry(final long deadline, final int slot) {
+            this.deadline = deadline;
+            this.slot = slot;
+        }
+    }
+
+    public BLETimingWheel(final long tickMillis, final int slotCount) {
+        this(tickMillis, slotCount, System.currentTimeMillis());
+    }
+
+    public BLETimingWheel(final long tickMillis, final int slotCount, final long now) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new HashSet<T>());
+        }
+        this.lastTick = now / tickMillis - 1;
+    }
+
+    /// Schedule item to expire at deadline (milliseconds since epoch), replacing any existing deadline.
+    public synchronized void schedule(final T item, final long deadline) {
+        // Deadlines in processed ticks are placed in the next tick to be processed
+        final long tick = Math.max(deadline / tickMillis, lastTick + 1);
+        final int slot = (int) (tick % slots.size());
+        final Entry previousEntry = entries.put(item, new Entry(deadline, slot));
+        if (previousEntry != null) {
+            slots.get(previousEntry.slot).remove(item);
+        }
+        slots.get(slot).add(item);
+    }
+
+    /// Cancel expiry of item.
+    public synchronized void cancel(final T item) {
+        final Entry entry = entries.remove(item);
+        if (entry != null) {
+            slots.get(entry.slot).remove(item);
+        }
+    }
+
+    /// Remove and return all items with deadline at or before now.
+    public synchronized List<T> expire(final long now) {
+        final List<T> expired = new ArrayList<>();
+        final long nowTick = now / tickMillis;
+        final long ticks = Math.min(nowTick - lastTick, slots.size());
+        for (long tick = nowTick - ticks + 1; tick <= nowTick; tick++) {
+            final Iterator<T> iterator = slots.get((int) (tick % slots.size())).iterator();
+            while (iterator.hasNext()) {
+                final T item = iterator.next();
+                if (entries.get(item).deadline <= now) {
+                    iterator.remove();
+                    entries.remove(item);
+                    expired.add(item);
+                }
+            }
+        }
+        // Current tick may have items with deadline later in the tick, revisit on next call
+        lastTick = Math.max(lastTick, nowTick - 1);
+        return expired;
+    }
+
+    /// Number of scheduled items.
+    public synchronized int size() {
+        return entries.size();
+    }
+}
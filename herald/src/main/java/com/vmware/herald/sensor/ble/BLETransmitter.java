@@ -36,4 +36,7 @@ public interface BLETransmitter extends Sensor {
      * @return True if BLE advertising is supported.
      */
     boolean isSupported();
+
+    /// Metrics of GATT server availability, including failed read windows per hour.
+    BLEGattServerMetrics gattServerMetrics();
 }
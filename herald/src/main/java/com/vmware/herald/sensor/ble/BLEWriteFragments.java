@@ -0,0 +1,47 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import java.util.Arrays;
+
+/// Fragments of data for writing to a characteristic, where each fragment fits within the
+/// negotiated MTU of the connection. Fragments are offsets into the original data, and a fragment
+/// is only materialised as an array when it is written, as required by the characteristic. Data
+/// that fits in a single fragment is written as is without copying.
+public class BLEWriteFragments {
+    /// Fragment size for the default ATT MTU of 23 bytes, i.e. without MTU negotiation
+    public final static int defaultFragmentSize = 20;
+    /// Bytes of ATT write request header within MTU
+    private final static int attributeHeaderSize = 3;
+    private final byte[] data;
+    private final int fragmentSize;
+    private int offset = 0;
+
+    public BLEWriteFragments(final byte[] data, final int fragmentSize) {
+        this.data = data;
+        this.fragmentSize = Math.max(1, fragmentSize);
+    }
+
+    /// Fragment size for negotiated MTU, falls back to default fragment size for invalid MTU.
+    public static int fragmentSize(final int mtu) {
+        return Math.max(defaultFragmentSize, mtu - attributeHeaderSize);
+    }
+
+    /// Number of fragments remaining.
+    public synchronized int size() {
+        return (data.length - offset + fragmentSize - 1) / fragmentSize;
+    }
+
+    /// Get and remove next fragment, returns null if there are no more fragments.
+    public synchronized byte[] poll() {
+        if (offset >= data.length) {
+            return null;
+        }
+        final int length = Math.min(fragmentSize, data.length - offset);
+        final byte[] fragment = (offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length));
+        offset += length;
+        return fragment;
+    }
+}
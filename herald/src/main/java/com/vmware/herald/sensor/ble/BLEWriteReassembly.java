@@ -0,0 +1,155 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/// Reassembly of fragmented signal characteristic writes from each central, the counterpart of
+/// BLEWriteFragments. Fragments are appended to a buffer per central that is preallocated from
+/// the bundle length declared in the header, or grows geometrically until the header is complete,
+/// such that reassembly is linear in the data length. Bundles are only returned once the declared
+/// length has arrived, and several bundles written consecutively are returned separately. Partial
+/// buffers are discarded if no fragment has been received within the timeout.
+public class BLEWriteReassembly {
+    /// Default time interval after which a partial buffer is discarded
+    public final static TimeInterval defaultTimeout = TimeInterval.seconds(30);
+    private final static int initialCapacity = 32;
+    private final long timeoutMillis;
+    private final Map<String, Buffer> buffers = new HashMap<>();
+    private long evicted = 0;
+    private long bytesCopied = 0;
+
+    private final static class Buffer {
+        private byte[] data = new byte[initialCapacity];
+        private int length = 0;
+        private long lastUpdatedAt;
+
+        /// Append data to buffer, returns number of bytes copied.
+        private int append(final byte[] value, final int offset, final int count) {
+            final int copied = ensureCapacity(length + count);
+            System.arraycopy(value, offset, data, length, count);
+            length += count;
+            return copied + count;
+        }
+
+        /// Grow buffer to capacity, returns number of bytes copied.
+        private int ensureCapacity(final int capacity) {
+            if (capacity > data.length) {
+                final int copied = data.length;
+                data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+                return copied;
+            }
+            return 0;
+        }
+    }
+
+    public BLEWriteReassembly() {
+        this(defaultTimeout);
+    }
+
+    public BLEWriteReassembly(final TimeInterval timeout) {
+        this.timeoutMillis = timeout.millis();
+    }
+
+    /// Append fragment written by central, returns complete bundles, or an empty list if the
+    /// current bundle is incomplete. Data of unknown length, e.g. unknown action code, is returned
+    /// as is without reassembly.
+    public synchronized List<byte[]> append(final String central, final byte[] value, final long now) {
+        if (value == null || value.length == 0) {
+            return Collections.emptyList();
+        }
+        Buffer buffer = buffers.get(central);
+        if (buffer != null && now - buffer.lastUpdatedAt >= timeoutMillis) {
+            buffers.remove(central);
+            evicted++;
+            buffer = null;
+        }
+        if (buffer == null) {
+            evict(now);
+            // Fast path for unfragmented bundle
+            final int bundleLength = SignalCharacteristicData.bundleLength(value, 0, value.length);
+            if (bundleLength == 0 || bundleLength == value.length) {
+                return Collections.singletonList(value);
+            }
+            buffer = new Buffer();
+            buffers.put(central, buffer);
+        }
+        buffer.lastUpdatedAt = now;
+        bytesCopied += buffer.append(value, 0, value.length);
+        final List<byte[]> bundles = new ArrayList<>(1);
+        int start = 0;
+        while (start < buffer.length) {
+            final int remaining = buffer.length - start;
+            final int bundleLength = SignalCharacteristicData.bundleLength(buffer.data, start, remaining);
+            if (bundleLength == 0) {
+                // Unknown length, return remaining data as is
+                bundles.add(Arrays.copyOfRange(buffer.data, start, buffer.length));
+                bytesCopied += remaining;
+                start = buffer.length;
+                break;
+            }
+            if (bundleLength < 0 || remaining < bundleLength) {
+                break;
+            }
+            bundles.add(Arrays.copyOfRange(buffer.data, start, start + bundleLength));
+            bytesCopied += bundleLength;
+            start += bundleLength;
+        }
+        if (start == buffer.length) {
+            buffers.remove(central);
+            return bundles;
+        }
+        // Move partial bundle to start of buffer, and preallocate for declared length once header is complete
+        if (start > 0) {
+            System.arraycopy(buffer.data, start, buffer.data, 0, buffer.length - start);
+            bytesCopied += buffer.length - start;
+            buffer.length -= start;
+        }
+        final int bundleLength = SignalCharacteristicData.bundleLength(buffer.data, 0, buffer.length);
+        if (bundleLength > 0) {
+            bytesCopied += buffer.ensureCapacity(bundleLength);
+        }
+        return bundles;
+    }
+
+    /// Discard partial buffer for central, e.g. on disconnection.
+    public synchronized void remove(final String central) {
+        buffers.remove(central);
+    }
+
+    /// Discard partial buffers that have not been updated within timeout.
+    private void evict(final long now) {
+        for (final Iterator<Buffer> iterator = buffers.values().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next().lastUpdatedAt >= timeoutMillis) {
+                iterator.remove();
+                evicted++;
+            }
+        }
+    }
+
+    /// Number of centrals with partial buffers.
+    public synchronized int size() {
+        return buffers.size();
+    }
+
+    /// Number of partial buffers discarded on timeout.
+    public synchronized long evicted() {
+        return evicted;
+    }
+
+    /// Number of bytes copied for reassembly.
+    public synchronized long bytesCopied() {
+        return bytesCopied;
+    }
+}
@@ -5,23 +5,26 @@
 package com.vmware.herald.sensor.ble;
 
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.le.ScanRecord;
 import android.bluetooth.le.ScanResult;
 
+import com.vmware.herald.sensor.ble.filter.BLEAdvertClassification;
 import com.vmware.herald.sensor.data.ConcreteSensorLogger;
 import com.vmware.herald.sensor.data.SensorLogger;
+import com.vmware.herald.sensor.datatype.Callback;
 import com.vmware.herald.sensor.datatype.Data;
 import com.vmware.herald.sensor.datatype.PayloadData;
 import com.vmware.herald.sensor.datatype.PayloadSharingData;
+import com.vmware.herald.sensor.datatype.Predicate;
 import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
 import com.vmware.herald.sensor.datatype.RSSI;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
+import com.vmware.herald.sensor.datatype.TimeInterval;
 
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -29,17 +32,84 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.ConcreteBLEDatabase");
-    private final Queue<BLEDatabaseDelegate> delegates = new ConcurrentLinkedQueue<>();
-    private final Map<TargetIdentifier, BLEDevice> database = new ConcurrentHashMap<>();
-    private final ExecutorService queue = Executors.newSingleThreadExecutor();
+    private final Queue<BLEDatabaseBatchDelegate> delegates = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<TargetIdentifier, BLEDevice> database = new ConcurrentHashMap<>();
+    /// Reverse index of all target identifiers referring to each device, as a device may be
+    // referenced by multiple identifiers when the mac address of an Android device changes.
+    private final ConcurrentMap<BLEDevice, Set<TargetIdentifier>> deviceIdentifiers = new ConcurrentHashMap<>();
+    /// Secondary index for finding Android devices by pseudo device address, as some devices
+    // (e.g. Samsung A10 and A20) change mac address on every scan call.
+    private final ConcurrentMap<Long, BLEDevice> pseudoDeviceAddressIndex = new ConcurrentHashMap<>();
+    /// Pseudo device address each device is currently indexed by, for removing stale index entries.
+    private final ConcurrentMap<BLEDevice, Long> pseudoDeviceAddressIndexKeys = new ConcurrentHashMap<>();
+    /// Secondary index for finding devices by payload data, e.g. for payload sharing.
+    private final ConcurrentMap<PayloadData, BLEDevice> payloadDataIndex = new ConcurrentHashMap<>();
+    /// Payload data each device is currently indexed by, for removing stale index entries.
+    private final ConcurrentMap<BLEDevice, PayloadData> payloadDataIndexKeys = new ConcurrentHashMap<>();
+    /// Devices that may have their payload shared, most recently updated first.
+    private final BLEPayloadSharingCandidates payloadSharingCandidates = new BLEPayloadSharingCandidates();
+    /// Payload sharing data limit (512 bytes limit according to spec, 510 with response, iOS requires response)
+    private final static int payloadSharingDataLimit = 510;
+    /// Events pending delivery to delegates, in order of occurrence.
+    private final List<BLEDatabaseEvent> pendingEvents = new ArrayList<>();
+    /// Attributes with pending update events for each device, for coalescing update events.
+    private final Map<BLEDevice, EnumSet<BLEDeviceAttribute>> pendingUpdates = new HashMap<>();
+    private final ScheduledExecutorService queue = Executors.newSingleThreadScheduledExecutor();
+    /// Devices that have not been updated for this time interval have expired.
+    private final TimeInterval deviceExpiryTimeInterval;
+    /// Connections that have been held for this time interval have expired.
+    private final TimeInterval connectionExpiryTimeInterval;
+    /// Devices by expiry time, for finding expired devices without scanning the database.
+    private final BLETimingWheel<BLEDevice> deviceExpiry = new BLETimingWheel<>(1000, 1024);
+    /// Connected devices by connection expiry time, for finding connections held for too long.
+    private final BLETimingWheel<BLEDevice> connectionExpiry = new BLETimingWheel<>(1000, 128);
+    /// Optional warm start cache for restoring recently seen devices after restart.
+    private BLEDeviceCache deviceCache = null;
+    /// Background thread for loading and saving warm start cache.
+    private final ScheduledExecutorService deviceCacheQueue = Executors.newSingleThreadScheduledExecutor();
+
+    public ConcreteBLEDatabase() {
+        this(TimeInterval.minutes(15), TimeInterval.minute);
+    }
+
+    public ConcreteBLEDatabase(final TimeInterval deviceExpiryTimeInterval, final TimeInterval connectionExpiryTimeInterval) {
+        this.deviceExpiryTimeInterval = deviceExpiryTimeInterval;
+        this.connectionExpiryTimeInterval = connectionExpiryTimeInterval;
+    }
+
+    /// Enable warm start cache, restoring devices from cache on discovery and saving
+    /// recently seen devices to cache at regular intervals. The cache is loaded and saved on
+    /// a background thread, separate from the event queue and the scan callback thread.
+    public void deviceCache(final BLEDeviceCache deviceCache, final TimeInterval saveTimeInterval) {
+        this.deviceCache = deviceCache;
+        deviceCacheQueue.execute(new Runnable() {
+            @Override
+            public void run() {
+                deviceCache.load();
+            }
+        });
+        deviceCacheQueue.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                deviceCache.save(ConcreteBLEDatabase.this);
+            }
+        }, saveTimeInterval.millis(), saveTimeInterval.millis(), TimeUnit.MILLISECONDS);
+    }
 
     @Override
     public void add(final BLEDatabaseDelegate delegate) {
+        delegates.add(new BLEDatabaseDelegateAdapter(delegate));
+    }
+
+    @Override
+    public void add(final BLEDatabaseBatchDelegate delegate) {
         delegates.add(delegate);
     }
 
@@ -48,6 +118,14 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
         return database.get(targetIdentifier);
     }
 
+    @Override
+    public BLEDevice device(final PseudoDeviceAddress pseudoDeviceAddress) {
+        if (pseudoDeviceAddress == null) {
+            return null;
+        }
+        return pseudoDeviceAddressIndex.get(pseudoDeviceAddress.address);
+    }
+
     @Override
     public BLEDevice device(final BluetoothDevice bluetoothDevice) {
         final TargetIdentifier identifier = new TargetIdentifier(bluetoothDevice);
@@ -55,16 +133,9 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
         if (device == null) {
             final BLEDevice newDevice = new BLEDevice(identifier, this);
             device = newDevice;
-            database.put(identifier, newDevice);
-            queue.execute(new Runnable() {
-                @Override
-                public void run() {
-                    logger.debug("create (device={})", identifier);
-                    for (BLEDatabaseDelegate delegate : delegates) {
-                        delegate.bleDatabaseDidCreate(newDevice);
-                    }
-                }
-            });
+            identifier(identifier, newDevice);
+            deviceExpiry.schedule(newDevice, expiryTime(newDevice));
+            notifyDelegates(new BLEDatabaseEvent(BLEDatabaseEvent.Type.create, newDevice, null));
         }
         device.peripheral(bluetoothDevice);
         return device;
@@ -72,6 +143,11 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
 
     @Override
     public BLEDevice device(final ScanResult scanResult) {
+        return device(scanResult, null);
+    }
+
+    @Override
+    public BLEDevice device(final ScanResult scanResult, final BLEAdvertClassification classification) {
         // Get device by target identifier
         final BluetoothDevice bluetoothDevice = scanResult.getDevice();
         final TargetIdentifier targetIdentifier = new TargetIdentifier(bluetoothDevice);
@@ -80,18 +156,12 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
             return existingDevice;
         }
         // Get device by pseudo device address
-        final PseudoDeviceAddress pseudoDeviceAddress = pseudoDeviceAddress(scanResult);
+        final PseudoDeviceAddress pseudoDeviceAddress = (classification != null ? classification : classify(scanResult)).pseudoDeviceAddress();
         if (pseudoDeviceAddress != null) {
             // Reuse existing Android device
-            BLEDevice deviceWithSamePseudoDeviceAddress = null;
-            for (final BLEDevice device : database.values()) {
-                if (device.pseudoDeviceAddress() != null && device.pseudoDeviceAddress().equals(pseudoDeviceAddress)) {
-                    deviceWithSamePseudoDeviceAddress = device;
-                    break;
-                }
-            }
+            final BLEDevice deviceWithSamePseudoDeviceAddress = device(pseudoDeviceAddress);
             if (deviceWithSamePseudoDeviceAddress != null) {
-                database.put(targetIdentifier, deviceWithSamePseudoDeviceAddress);
+                identifier(targetIdentifier, deviceWithSamePseudoDeviceAddress);
                 if (deviceWithSamePseudoDeviceAddress.peripheral() != bluetoothDevice) {
                     deviceWithSamePseudoDeviceAddress.peripheral(bluetoothDevice);
                 }
@@ -106,6 +176,7 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
                 final BLEDevice newDevice = device(bluetoothDevice);
                 newDevice.pseudoDeviceAddress(pseudoDeviceAddress);
                 newDevice.operatingSystem(BLEDeviceOperatingSystem.android);
+                restore(newDevice);
                 return newDevice;
             }
         }
@@ -113,54 +184,73 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
         return device(bluetoothDevice);
     }
 
-    /// Get pseudo device address for Android devices
-    private PseudoDeviceAddress pseudoDeviceAddress(final ScanResult scanResult) {
-        final ScanRecord scanRecord = scanResult.getScanRecord();
-        if (scanRecord == null) {
-            return null;
+    /// Restore device information from warm start cache to avoid redundant connections
+    /// for reading information that is already known, e.g. payload, model and device name.
+    private void restore(final BLEDevice device) {
+        if (deviceCache == null) {
+            return;
+        }
+        final BLEDeviceCache.Entry entry = deviceCache.restore(device.pseudoDeviceAddress());
+        if (entry == null) {
+            return;
+        }
+        if (entry.operatingSystem == BLEDeviceOperatingSystem.android || entry.operatingSystem == BLEDeviceOperatingSystem.ios) {
+            device.operatingSystem(entry.operatingSystem);
+        }
+        if (entry.model != null) {
+            device.model(entry.model);
+        }
+        if (entry.deviceName != null) {
+            device.deviceName(entry.deviceName);
         }
-        // HERALD pseudo device address
-        if (scanRecord.getManufacturerSpecificData(BLESensorConfiguration.manufacturerIdForSensor) != null) {
-            final byte[] data = scanRecord.getManufacturerSpecificData(BLESensorConfiguration.manufacturerIdForSensor);
-            if (data != null && data.length == 6) {
-                return new PseudoDeviceAddress(data);
+        device.payloadData(entry.payloadData);
+        logger.debug("restore (device={})", device);
+    }
+
+    /// Register target identifier as a reference to device
+    private void identifier(final TargetIdentifier identifier, final BLEDevice device) {
+        Set<TargetIdentifier> identifiers = deviceIdentifiers.get(device);
+        if (identifiers == null) {
+            final Set<TargetIdentifier> newIdentifiers = Collections.newSetFromMap(new ConcurrentHashMap<TargetIdentifier, Boolean>());
+            identifiers = deviceIdentifiers.putIfAbsent(device, newIdentifiers);
+            if (identifiers == null) {
+                identifiers = newIdentifiers;
             }
         }
-        // OpenTrace device id
-        else if (BLESensorConfiguration.interopOpenTraceEnabled &&
-                scanRecord.getManufacturerSpecificData(BLESensorConfiguration.interopOpenTraceManufacturerId) != null) {
-            final byte[] data = scanRecord.getManufacturerSpecificData(BLESensorConfiguration.interopOpenTraceManufacturerId);
-            if (data != null && data.length > 0) {
-                return new PseudoDeviceAddress(data);
+        identifiers.add(identifier);
+        final BLEDevice previousDevice = database.put(identifier, device);
+        // Identifier has been reassigned from another device
+        if (previousDevice != null && previousDevice != device) {
+            final Set<TargetIdentifier> previousIdentifiers = deviceIdentifiers.get(previousDevice);
+            if (previousIdentifiers != null) {
+                previousIdentifiers.remove(identifier);
             }
         }
-        // Not found
-        return null;
+    }
+
+    /// Classify scan record for getting pseudo device address of Android devices
+    private static BLEAdvertClassification classify(final ScanResult scanResult) {
+        final BLEAdvertClassification classification = new BLEAdvertClassification();
+        return classification.classify(scanResult.getScanRecord() == null ? null : scanResult.getScanRecord().getBytes());
     }
 
     @Override
     public BLEDevice device(PayloadData payloadData) {
-        BLEDevice device = null;
-        for (BLEDevice candidate : database.values()) {
-            if (payloadData.equals(candidate.payloadData())) {
-                device = candidate;
-                break;
-            }
-        }
+        BLEDevice device = payloadDataIndex.get(payloadData);
         if (device == null) {
             final TargetIdentifier identifier = new TargetIdentifier();
             final BLEDevice newDevice = new BLEDevice(identifier, this);
-            device = newDevice;
-            database.put(identifier, newDevice);
-            queue.execute(new Runnable() {
-                @Override
-                public void run() {
-                    logger.debug("create (device={})", identifier);
-                    for (BLEDatabaseDelegate delegate : delegates) {
-                        delegate.bleDatabaseDidCreate(newDevice);
-                    }
-                }
-            });
+            // Claim payload in index first to ensure concurrent requests for the
+            // same payload data cannot create more than one device
+            final BLEDevice existingDevice = payloadDataIndex.putIfAbsent(payloadData, newDevice);
+            if (existingDevice != null) {
+                device = existingDevice;
+            } else {
+                device = newDevice;
+                identifier(identifier, newDevice);
+                deviceExpiry.schedule(newDevice, expiryTime(newDevice));
+                notifyDelegates(new BLEDatabaseEvent(BLEDatabaseEvent.Type.create, newDevice, null));
+            }
         }
         device.payloadData(payloadData);
         return device;
@@ -168,7 +258,23 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
 
     @Override
     public List<BLEDevice> devices() {
-        return new ArrayList<>(database.values());
+        return new ArrayList<>(deviceIdentifiers.keySet());
+    }
+
+    @Override
+    public void forEachDevice(final Callback<BLEDevice> visitor) {
+        for (final BLEDevice device : deviceIdentifiers.keySet()) {
+            visitor.accept(device);
+        }
+    }
+
+    @Override
+    public void forEachDevice(final Predicate<BLEDevice> predicate, final Callback<BLEDevice> visitor) {
+        for (final BLEDevice device : deviceIdentifiers.keySet()) {
+            if (predicate.test(device)) {
+                visitor.accept(device);
+            }
+        }
     }
 
     @Override
@@ -176,126 +282,233 @@ public class ConcreteBLEDatabase implements BLEDatabase, BLEDeviceDelegate {
         if (device == null) {
             return;
         }
-        final List<TargetIdentifier> identifiers = new ArrayList<>();
-        for (final Map.Entry<TargetIdentifier,BLEDevice> entry : database.entrySet()) {
-            if (entry.getValue() == device) {
-                identifiers.add(entry.getKey());
-            }
+        final Long pseudoDeviceAddressIndexKey = pseudoDeviceAddressIndexKeys.remove(device);
+        if (pseudoDeviceAddressIndexKey != null) {
+            pseudoDeviceAddressIndex.remove(pseudoDeviceAddressIndexKey, device);
         }
-        if (identifiers.isEmpty()) {
+        final PayloadData payloadDataIndexKey = payloadDataIndexKeys.remove(device);
+        if (payloadDataIndexKey != null) {
+            payloadDataIndex.remove(payloadDataIndexKey, device);
+        }
+        payloadSharingCandidates.remove(device);
+        deviceExpiry.cancel(device);
+        connectionExpiry.cancel(device);
+        final Set<TargetIdentifier> identifiers = deviceIdentifiers.remove(device);
+        if (identifiers == null || identifiers.isEmpty()) {
             return;
         }
         for (final TargetIdentifier identifier : identifiers) {
-            database.remove(identifier);
+            database.remove(identifier, device);
         }
-        queue.execute(new Runnable() {
-            @Override
-            public void run() {
-            logger.debug("delete (device={},identifiers={})", device, identifiers);
-            for (final BLEDatabaseDelegate delegate : delegates) {
-                delegate.bleDatabaseDidDelete(device);
+        logger.debug("delete (device={},identifiers={})", device, identifiers);
+        notifyDelegates(new BLEDatabaseEvent(BLEDatabaseEvent.Type.delete, device, null));
+    }
+
+    @Override
+    public List<BLEDevice> expiredDevices() {
+        final long now = System.currentTimeMillis();
+        final List<BLEDevice> expiredDevices = new ArrayList<>();
+        for (final BLEDevice device : deviceExpiry.expire(now)) {
+            // Device has been deleted
+            if (!deviceIdentifiers.containsKey(device)) {
+                continue;
             }
+            // Device has been updated since it was scheduled, reschedule with new expiry time
+            final long expiryTime = expiryTime(device);
+            if (expiryTime > now) {
+                deviceExpiry.schedule(device, expiryTime);
+                continue;
             }
-        });
+            expiredDevices.add(device);
+        }
+        return expiredDevices;
+    }
+
+    @Override
+    public List<BLEDevice> expiredConnections() {
+        final List<BLEDevice> expiredConnections = new ArrayList<>();
+        // Connection expiry is rescheduled on every connection and cancelled on disconnection
+        for (final BLEDevice device : connectionExpiry.expire(System.currentTimeMillis())) {
+            if (device.state() == BLEDeviceState.connected && deviceIdentifiers.containsKey(device)) {
+                expiredConnections.add(device);
+            }
+        }
+        return expiredConnections;
+    }
+
+    /// Time when device expires if it is not updated, device has expired when
+    /// time since last update is greater than device expiry time interval.
+    private long expiryTime(final BLEDevice device) {
+        return device.lastUpdatedAt.getTime() + deviceExpiryTimeInterval.millis() + 1;
     }
 
     @Override
     public PayloadSharingData payloadSharingData(final BLEDevice peer) {
+        return payloadSharingData(peer, null);
+    }
+
+    @Override
+    public PayloadSharingData payloadSharingData(final BLEDevice peer, final List<PayloadData> newPayloads) {
         final RSSI rssi = peer.rssi();
         if (rssi == null) {
             return new PayloadSharingData(new RSSI(127), new Data(new byte[0]));
         }
-        // Get other devices that were seen recently by this device
-        final List<BLEDevice> unknownDevices = new ArrayList<>();
-        final List<BLEDevice> knownDevices = new ArrayList<>();
-        for (BLEDevice device : database.values()) {
-            // Device was seen recently
-            if (device.timeIntervalSinceLastUpdate().value >= BLESensorConfiguration.payloadSharingExpiryTimeInterval.value) {
-                continue;
-            }
-            // Device has payload
-            if (device.payloadData() == null) {
-                continue;
-            }
-            // Device is iOS or receive only (Samsung J6)
-            if (!(device.operatingSystem() == BLEDeviceOperatingSystem.ios || device.receiveOnly())) {
-                continue;
-            }
-            // Device is HERALD
-            if (device.signalCharacteristic() == null) {
-                continue;
-            }
-            // Payload is not the peer itself
-            if (peer.payloadData() != null && (Arrays.equals(device.payloadData().value, peer.payloadData().value))) {
-                continue;
-            }
-            // Payload is new to peer
-            if (peer.payloadSharingData.contains(device.payloadData())) {
-                knownDevices.add(device);
-            } else {
-                unknownDevices.add(device);
-            }
-        }
-        // Most recently seen unknown devices first
-        final List<BLEDevice> devices = new ArrayList<>();
-        Collections.sort(unknownDevices, new Comparator<BLEDevice>() {
-            @Override
-            public int compare(BLEDevice d0, BLEDevice d1) {
-                return Long.compare(d1.lastUpdatedAt.getTime(), d0.lastUpdatedAt.getTime());
-            }
-        });
-        Collections.sort(knownDevices, new Comparator<BLEDevice>() {
-            @Override
-            public int compare(BLEDevice d0, BLEDevice d1) {
-                return Long.compare(d1.lastUpdatedAt.getTime(), d0.lastUpdatedAt.getTime());
-            }
-        });
-        devices.addAll(unknownDevices);
-        devices.addAll(knownDevices);
+        // Get other devices that were seen recently by this device, most recently seen first
+        final long now = System.currentTimeMillis();
+        final List<BLEDevice> devices = payloadSharingCandidates.updatedSince(now - BLESensorConfiguration.payloadSharingExpiryTimeInterval.millis());
         if (devices.size() == 0) {
             return new PayloadSharingData(new RSSI(127), new Data(new byte[0]));
         }
         // Limit how much to share to avoid oversized data transfers over BLE
         // (512 bytes limit according to spec, 510 with response, iOS requires response)
-        final Set<PayloadData> sharedPayloads = new HashSet<>(devices.size());
-        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        for (BLEDevice device : devices) {
-            final PayloadData payloadData = device.payloadData();
-            if (payloadData == null) {
-                continue;
+        final byte[] buffer = new byte[payloadSharingDataLimit];
+        int length = 0;
+        final Set<PayloadData> sharedPayloads = new HashSet<>();
+        boolean full = false;
+        // Share unknown payloads first (pass 0), then known payloads (pass 1)
+        for (int pass = 0; pass < 2 && !full; pass++) {
+            for (final BLEDevice device : devices) {
+                final PayloadData payloadData = device.payloadData();
+                // Device is still shareable and seen recently
+                if (payloadData == null || !BLEPayloadSharingCandidates.shareable(device) ||
+                        now - device.lastUpdatedAt.getTime() >= BLESensorConfiguration.payloadSharingExpiryTimeInterval.millis()) {
+                    continue;
+                }
+                // Payload is not the peer itself
+                if (peer.payloadData() != null && (Arrays.equals(payloadData.value, peer.payloadData().value))) {
+                    continue;
+                }
+                // Payload is new to peer in first pass, and known to peer in second pass
+                if (peer.payloadSharingData.contains(payloadData) != (pass == 1)) {
+                    continue;
+                }
+                // Eliminate duplicates (this happens when the same device has changed address but the old version has not expired yet)
+                if (sharedPayloads.contains(payloadData)) {
+                    continue;
+                }
+                // Limit payload sharing by BLE transfer limit
+                if (length + payloadData.value.length > payloadSharingDataLimit) {
+                    full = true;
+                    break;
+                }
+                System.arraycopy(payloadData.value, 0, buffer, length, payloadData.value.length);
+                length += payloadData.value.length;
+                if (pass == 0 && newPayloads != null) {
+                    newPayloads.add(payloadData);
+                }
+                sharedPayloads.add(payloadData);
             }
-            // Eliminate duplicates (this happens when the same device has changed address but the old version has not expired yet)
-            if (sharedPayloads.contains(payloadData)) {
-                continue;
+        }
+        final Data data = new Data(Arrays.copyOf(buffer, length));
+        return new PayloadSharingData(rssi, data);
+    }
+
+    // MARK:- Event delivery
+
+    /// Queue event for delivery to delegates. Events are delivered in batches by a single task
+    /// per batch window, with update events coalesced per device and attribute, such that a scan
+    /// cycle with many results does not submit a task per event. RSSI updates are never coalesced
+    /// as each one is a measurement.
+    private void notifyDelegates(final BLEDatabaseEvent event) {
+        synchronized (pendingEvents) {
+            if (event.type == BLEDatabaseEvent.Type.update && event.attribute != BLEDeviceAttribute.rssi) {
+                EnumSet<BLEDeviceAttribute> attributes = pendingUpdates.get(event.device);
+                if (attributes == null) {
+                    attributes = EnumSet.noneOf(BLEDeviceAttribute.class);
+                    pendingUpdates.put(event.device, attributes);
+                }
+                if (!attributes.add(event.attribute)) {
+                    return;
+                }
+            } else if (event.type == BLEDatabaseEvent.Type.delete) {
+                // Updates after delete are not coalesced with updates before delete
+                pendingUpdates.remove(event.device);
             }
-            // Limit payload sharing by BLE transfer limit
-            if (payloadData.value.length + byteArrayOutputStream.toByteArray().length > 510) {
-                break;
+            pendingEvents.add(event);
+            // Delivery has already been scheduled for pending events
+            if (pendingEvents.size() > 1) {
+                return;
             }
-            try {
-                byteArrayOutputStream.write(payloadData.value);
-                peer.payloadSharingData.add(payloadData);
-                sharedPayloads.add(payloadData);
-            } catch (Throwable e) {
-                logger.fault("Failed to append payload sharing data", e);
+        }
+        queue.schedule(new Runnable() {
+            @Override
+            public void run() {
+                deliverPendingEvents();
             }
+        }, BLESensorConfiguration.databaseEventBatchTimeInterval.millis(), TimeUnit.MILLISECONDS);
+    }
+
+    /// Deliver all pending events to delegates as a single batch.
+    private void deliverPendingEvents() {
+        final List<BLEDatabaseEvent> events;
+        synchronized (pendingEvents) {
+            events = Collections.unmodifiableList(new ArrayList<>(pendingEvents));
+            pendingEvents.clear();
+            pendingUpdates.clear();
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        logger.debug("deliverPendingEvents (events={})", events.size());
+        for (final BLEDatabaseBatchDelegate delegate : delegates) {
+            delegate.bleDatabaseDidUpdate(events);
+        }
+    }
+
+    /// Update pseudo device address index to reflect current pseudo device address of device
+    private void updatePseudoDeviceAddressIndex(final BLEDevice device) {
+        final PseudoDeviceAddress pseudoDeviceAddress = device.pseudoDeviceAddress();
+        final Long previousKey = (pseudoDeviceAddress == null ?
+                pseudoDeviceAddressIndexKeys.remove(device) :
+                pseudoDeviceAddressIndexKeys.put(device, pseudoDeviceAddress.address));
+        if (previousKey != null && (pseudoDeviceAddress == null || previousKey != pseudoDeviceAddress.address)) {
+            pseudoDeviceAddressIndex.remove(previousKey, device);
+        }
+        if (pseudoDeviceAddress != null) {
+            pseudoDeviceAddressIndex.put(pseudoDeviceAddress.address, device);
+        }
+    }
+
+    /// Update payload data index to reflect current payload data of device
+    private void updatePayloadDataIndex(final BLEDevice device) {
+        final PayloadData payloadData = device.payloadData();
+        final PayloadData previousKey = (payloadData == null ?
+                payloadDataIndexKeys.remove(device) :
+                payloadDataIndexKeys.put(device, payloadData));
+        if (previousKey != null && !previousKey.equals(payloadData)) {
+            payloadDataIndex.remove(previousKey, device);
+        }
+        if (payloadData != null) {
+            payloadDataIndex.put(payloadData, device);
         }
-        final Data data = new Data(byteArrayOutputStream.toByteArray());
-        return new PayloadSharingData(rssi, data);
     }
 
     // MARK:- BLEDeviceDelegate
 
     @Override
     public void device(final BLEDevice device, final BLEDeviceAttribute didUpdate) {
-        queue.execute(new Runnable() {
-            @Override
-            public void run() {
-                logger.debug("update (device={},attribute={})", device.identifier, didUpdate.name());
-                for (BLEDatabaseDelegate delegate : delegates) {
-                    delegate.bleDatabaseDidUpdate(device, didUpdate);
-                }
+        // Maintain secondary indices synchronously to keep them consistent with device attributes,
+        // ignoring updates to devices that have already been deleted from the database
+        if (database.get(device.identifier) == device) {
+            switch (didUpdate) {
+                case pseudoDeviceAddress:
+                    updatePseudoDeviceAddressIndex(device);
+                    break;
+                case payloadData:
+                    updatePayloadDataIndex(device);
+                    break;
+                case state:
+                    if (device.state() == BLEDeviceState.connected) {
+                        connectionExpiry.schedule(device, device.lastUpdatedAt.getTime() + connectionExpiryTimeInterval.millis() + 1);
+                    } else {
+                        connectionExpiry.cancel(device);
+                    }
+                    break;
+                default:
+                    break;
             }
-        });
+            payloadSharingCandidates.update(device);
+        }
+        notifyDelegates(new BLEDatabaseEvent(BLEDatabaseEvent.Type.update, device, didUpdate));
     }
 }
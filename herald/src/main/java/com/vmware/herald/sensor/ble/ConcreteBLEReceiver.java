@@ -23,7 +23,7 @@ import android.os.ParcelUuid;
 
 import com.vmware.herald.sensor.PayloadDataSupplier;
 import com.vmware.herald.sensor.SensorDelegate;
-import com.vmware.herald.sensor.analysis.Sample;
+import com.vmware.herald.sensor.ble.filter.BLEAdvertClassification;
 import com.vmware.herald.sensor.ble.filter.BLEAdvertParser;
 import com.vmware.herald.sensor.ble.filter.BLEAdvertServiceData;
 import com.vmware.herald.sensor.ble.filter.BLEDeviceFilter;
@@ -33,11 +33,11 @@ import com.vmware.herald.sensor.data.SensorLogger;
 import com.vmware.herald.sensor.datatype.BluetoothState;
 import com.vmware.herald.sensor.datatype.Callback;
 import com.vmware.herald.sensor.datatype.Data;
-import com.vmware.herald.sensor.datatype.ImmediateSendData;
 import com.vmware.herald.sensor.datatype.LegacyPayloadData;
 import com.vmware.herald.sensor.datatype.PayloadData;
 import com.vmware.herald.sensor.datatype.PayloadSharingData;
 import com.vmware.herald.sensor.datatype.PayloadTimestamp;
+import com.vmware.herald.sensor.datatype.Predicate;
 import com.vmware.herald.sensor.datatype.RSSI;
 import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
 import com.vmware.herald.sensor.datatype.SignalCharacteristicDataType;
@@ -45,13 +45,14 @@ import com.vmware.herald.sensor.datatype.TargetIdentifier;
 import com.vmware.herald.sensor.datatype.TimeInterval;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -61,36 +62,91 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "BLE.ConcreteBLEReceiver");
     // Scan ON/OFF/PROCESS durations
     private final static long scanOnDurationMillis = TimeInterval.seconds(4).millis();
-    private final static long scanRestDurationMillis = TimeInterval.seconds(1).millis();
     private final static long scanProcessDurationMillis = TimeInterval.seconds(60).millis();
-    private final static long scanOffDurationMillis = TimeInterval.seconds(2).millis();
     private final static long timeToConnectDeviceLimitMillis = TimeInterval.seconds(12).millis();
-    private final static Sample timeToConnectDevice = new Sample();
-    private final static Sample timeToProcessDevice = new Sample();
-    private final static int defaultMTU = 20;
+    /// MTU requested for fragmenting signal characteristic writes
+    private final static int requestMTU = 512;
     private final Context context;
     private final BluetoothStateManager bluetoothStateManager;
     private final BLEDatabase database;
     private final BLETransmitter transmitter;
     private final PayloadDataSupplier payloadDataSupplier;
     private final BLEDeviceFilter deviceFilter;
+    private final BLEConnector<BluetoothGatt> connector;
+    private final BLEConnectionScheduler connectionScheduler = new BLEConnectionScheduler(BLESensorConfiguration.concurrentConnectionLimit);
+    private final BLEConnectionPriority<NextTask> connectionPriority = new BLEConnectionPriority<>(TimeInterval.seconds(5).millis());
+    private final BLEScanDutyCycle scanDutyCycle = new BLEScanDutyCycle();
+    /// MTU negotiated for current connection to device
+    private final Map<BLEDevice, Integer> negotiatedMTU = new ConcurrentHashMap<>();
+    private final BLEDeviceProfileCache profileCache = new BLEDeviceProfileCache();
+    /// Devices where operating system was set by cached profile rather than discovery
+    private final Set<BLEDevice> profiledOperatingSystem = Collections.newSetFromMap(new ConcurrentHashMap<BLEDevice, Boolean>());
+    /// Devices discovered in previous scan, for identifying new devices
+    private Set<BLEDevice> previouslyDiscovered = new HashSet<>();
     private final ExecutorService operationQueue = Executors.newSingleThreadExecutor();
-    private final Queue<ScanResult> scanResults = new ConcurrentLinkedQueue<>();
+    /// Delegates for immediate send delivery results
+    private final Queue<BLEImmediateSendDelegate> immediateSendDelegates = new ConcurrentLinkedQueue<>();
+    /// Undelivered immediate send messages per device
+    private final BLEImmediateSendOutbox immediateSendOutbox = new BLEImmediateSendOutbox(
+            BLESensorConfiguration.immediateSendQueueCapacity,
+            (BLESensorConfiguration.immediateSendCoalescingEnabled ? BLEWriteFragments.fragmentSize(requestMTU) : 0),
+            new Callback<BLEImmediateSendOutbox.Delivery>() {
+                @Override
+                public void accept(BLEImmediateSendOutbox.Delivery delivery) {
+                    final boolean delivered = (delivery.result == BLEImmediateSendOutbox.Result.delivered);
+                    if (delivered) {
+                        logger.debug("immediateSend, delivered (device={},dataLength={})", delivery.device, delivery.data.value.length);
+                    } else {
+                        logger.fault("immediateSend, failed (device={},dataLength={})", delivery.device, delivery.data.value.length);
+                    }
+                    for (final BLEImmediateSendDelegate delegate : immediateSendDelegates) {
+                        delegate.immediateSend(delivery.data, delivery.device.identifier, delivered);
+                    }
+                }
+            });
+    /// Devices awaiting a connection for immediate send, delivered on a separate queue to scanning
+    private final Set<BLEDevice> immediateSendTargets = Collections.newSetFromMap(new ConcurrentHashMap<BLEDevice, Boolean>());
+    /// Immediate send targets that were already connecting or connected, deferred to the next scan cycle
+    private final Set<BLEDevice> immediateSendDeferredTargets = Collections.newSetFromMap(new ConcurrentHashMap<BLEDevice, Boolean>());
+    private final ExecutorService immediateSendQueue = Executors.newSingleThreadExecutor();
+    private final BLEScanResultBuffer<ScanResult> scanResults = new BLEScanResultBuffer<>();
     private final AtomicBoolean receiverEnabled = new AtomicBoolean(false);
+    private final BLEReceiverMetrics metrics = new BLEReceiverMetrics();
+    /// Task in progress on connected device, for recording task durations
+    private final Map<BLEDevice, TaskTiming> taskTimings = new ConcurrentHashMap<>();
 
-    private enum NextTask {
+    enum NextTask {
         nothing, readPayload, writePayload, writeRSSI, writePayloadSharing, immediateSend,
         readModel, readDeviceName
     }
 
+    private final static class TaskTiming {
+        private final NextTask task;
+        private final BLEDeviceOperatingSystem operatingSystem;
+        private final long startedAt = System.currentTimeMillis();
+
+        private TaskTiming(final NextTask task, final BLEDeviceOperatingSystem operatingSystem) {
+            this.task = task;
+            this.operatingSystem = operatingSystem;
+        }
+    }
+
     private final ScanCallback scanCallback = new ScanCallback() {
+        /// Reusable classification of scan records, scan callbacks are delivered on a single thread
+        private final BLEAdvertClassification classification = new BLEAdvertClassification();
+
         @Override
         public void onScanResult(int callbackType, ScanResult scanResult) {
             logger.debug("onScanResult (result={}, data={})", scanResult, BLEAdvertParser.hex(scanResult.getScanRecord().getBytes()));
 
-            scanResults.add(scanResult);
-            // Create or update device in database
-            final BLEDevice device = database.device(scanResult);
+            metrics.scanResultsIn(1);
+            if (!scanResults.add(scanResult.getDevice().getAddress(), scanResult, scanResult.getRssi())) {
+                metrics.scanResultsDropped(1);
+                logger.fault("onScanResult, dropped scan result, buffer full (result={},buffer={})", scanResult, scanResults);
+            }
+            // Create or update device in database, classification avoids allocation for new devices
+            classification.classify(scanResult.getScanRecord() == null ? null : scanResult.getScanRecord().getBytes());
+            final BLEDevice device = database.device(scanResult, classification);
             device.registerDiscovery();
             // Read RSSI from scan result
             device.rssi(new RSSI(scanResult.getRssi()));
@@ -114,12 +170,34 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
      * Receiver starts automatically when Bluetooth is enabled.
      */
     public ConcreteBLEReceiver(Context context, BluetoothStateManager bluetoothStateManager, BLETimer timer, BLEDatabase database, BLETransmitter transmitter, PayloadDataSupplier payloadDataSupplier) {
+        this(context, bluetoothStateManager, database, transmitter, payloadDataSupplier);
+        timer.add(new ScanLoopTask());
+    }
+
+    /// Receiver without scan loop, for driving connection tasks directly.
+    ConcreteBLEReceiver(Context context, BluetoothStateManager bluetoothStateManager, BLEDatabase database, BLETransmitter transmitter, PayloadDataSupplier payloadDataSupplier) {
         this.context = context;
         this.bluetoothStateManager = bluetoothStateManager;
         this.database = database;
         this.transmitter = transmitter;
         this.payloadDataSupplier = payloadDataSupplier;
-        timer.add(new ScanLoopTask());
+        this.connector = new BLEConnector<>(new BLEConnector.Gatt<BluetoothGatt>() {
+            @Override
+            public BluetoothGatt connect(BLEDevice device) {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                    // API 23 and above - force Low Energy only
+                    return device.peripheral().connectGatt(ConcreteBLEReceiver.this.context, false, ConcreteBLEReceiver.this, BluetoothDevice.TRANSPORT_LE);
+                } else {
+                    // support back to API 21
+                    return device.peripheral().connectGatt(ConcreteBLEReceiver.this.context, false, ConcreteBLEReceiver.this);
+                }
+            }
+
+            @Override
+            public void close(BluetoothGatt gatt) {
+                gatt.close();
+            }
+        }, timeToConnectDeviceLimitMillis, scanProcessDurationMillis, metrics);
 
         // Enable device introspection if device filter training is enabled
         // to obtain device name and model data for all devices, and also
@@ -172,50 +250,122 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             return false;
         }
 
-        final Data dataToSend = SignalCharacteristicData.encodeImmediateSend(new ImmediateSendData(data));
-        logger.debug("immediateSend (device={},dataLength={})", device, dataToSend.value.length);
-
         // Immediate send process
-        // 1. Set immediate send data for device
-        // 2. Initiate connection to device
+        // 1. Add message to outbox queue for device, rejected if queue is full
+        // 2. Initiate connection to device on immediate send queue
         // 3. onConnectionStateChange() will trigger service and characteristic discovery
         // 4. signalCharacteristic discovery will trigger nextTask()
-        // 5. nextTask() will be .immediateSend if immediate send data has been set for device
+        // 5. nextTask() will be .immediateSend if outbox has messages for device
         // 6. writeSignalCharacteristic() will be called to perform immediate send to signalCharacteristic
         // 7. onCharacteristicWrite() will be triggered when signal data has been written
-        // 8. Immediate send data for device will be set to null upon completion of write
-        // 9. Connection is closed immediately
-        device.immediateSendData(dataToSend);
-        return taskConnectDevice(device);
+        // 8. Delivery result is reported by outbox upon completion of write or connection
+        // 9. Connection is closed immediately once all messages have been written
+        if (!immediateSendOutbox.offer(device, data)) {
+            logger.fault("immediateSend denied, outbox full (device={},outbox={})", device, immediateSendOutbox);
+            return false;
+        }
+        logger.debug("immediateSend (device={},dataLength={})", device, data.value.length);
+        immediateSendTargets.add(device);
+        immediateSendQueue.execute(immediateSendDelivery);
+        return true;
     }
 
     @Override
-    public boolean immediateSendAll(Data data) {
-        logger.debug("immediateSendAll");
-        // Encode data
-        final Data dataToSend = SignalCharacteristicData.encodeImmediateSend(new ImmediateSendData(data));
-        logger.debug("immediateSendAll (dataLength={})", dataToSend.value.length);
-
-        // Order by descending time seen (most recent first)
-        // Choose targets
-        SortedSet<BLEDevice> targets = new TreeSet<>(new BLEDeviceLastUpdatedComparator());
+    public boolean immediateSendAll(final Data data) {
+        logger.debug("immediateSendAll (dataLength={})", data.value.length);
         // Fetch targets seen (for RSSI via advert) in the last minute
-        for (BLEDevice device : database.devices()) {
-            if (!device.ignore() && device.signalCharacteristic() != null && device.timeIntervalSinceLastUpdate().value < 60) {
-                targets.add(device);
+        final long seenSince = System.currentTimeMillis() - TimeInterval.minute.millis();
+        database.forEachDevice(new Predicate<BLEDevice>() {
+            @Override
+            public boolean test(BLEDevice device) {
+                return !device.ignore() && device.signalCharacteristic() != null && device.lastUpdatedAt.getTime() > seenSince;
+            }
+        }, new Callback<BLEDevice>() {
+            @Override
+            public void accept(BLEDevice device) {
+                if (immediateSendOutbox.offer(device, data)) {
+                    immediateSendTargets.add(device);
+                } else {
+                    logger.fault("immediateSendAll, outbox full (device={})", device);
+                }
+            }
+        });
+        // Connect and immediate send to all targets concurrently (fire and forget)
+        immediateSendQueue.execute(immediateSendDelivery);
+        return true;
+    }
+
+    @Override
+    public void add(BLEImmediateSendDelegate delegate) {
+        immediateSendDelegates.add(delegate);
+    }
+
+    @Override
+    public BLEReceiverMetrics metrics() {
+        return metrics;
+    }
+
+    /// Connect to all immediate send targets using the connection scheduler, such that targets
+    /// are processed concurrently up to the connection limit, and messages for each target are
+    /// written within a single connection. Targets added while a delivery is in progress are
+    /// processed by the next delivery. Targets that are already connecting or connected, e.g.
+    /// connected to the GATT server as a central, are deferred to the next scan cycle rather than
+    /// retried immediately, as the connection cannot be used for immediate send.
+    private final Runnable immediateSendDelivery = new Runnable() {
+        @Override
+        public void run() {
+            if (immediateSendTargets.isEmpty()) {
+                return;
+            }
+            final List<BLEDevice> targets = new ArrayList<>(immediateSendTargets);
+            immediateSendTargets.removeAll(targets);
+            // Order by descending time seen (most recent first)
+            Collections.sort(targets, new BLEDeviceLastUpdatedComparator());
+            logger.debug("immediateSendDelivery (targets={})", targets.size());
+            connectionScheduler.connect(targets, new Predicate<BLEDevice>() {
+                @Override
+                public boolean test(BLEDevice device) {
+                    // Messages may have been delivered by a connection for other tasks
+                    if (!immediateSendOutbox.pending(device)) {
+                        return false;
+                    }
+                    return !(device.state() == BLEDeviceState.connecting || device.state() == BLEDeviceState.connected);
+                }
+            }, new Callback<BLEDevice>() {
+                @Override
+                public void accept(BLEDevice device) {
+                    immediateSendOutbox.attempt(device);
+                    if (!taskConnectDevice(device)) {
+                        immediateSendOutbox.connectionEnded(device);
+                    }
+                }
+            }, scanProcessDurationMillis);
+            // Requeue targets not processed within time limit, and defer targets that were busy
+            for (final BLEDevice target : targets) {
+                if (!immediateSendOutbox.pending(target)) {
+                    continue;
+                }
+                if (target.state() == BLEDeviceState.connecting || target.state() == BLEDeviceState.connected) {
+                    immediateSendDeferredTargets.add(target);
+                } else {
+                    immediateSendTargets.add(target);
+                }
+            }
+            if (!immediateSendTargets.isEmpty()) {
+                immediateSendQueue.execute(this);
             }
         }
-        // Send messages
-        // Connect and immediate send to each
-        // NOTE: This separate loop doesn't order interactions yet. Once working, refactor so this has an effect.
-        for (BLEDevice target : targets) {
-            target.immediateSendData(dataToSend);
-        }
-        // Now force an out of sequence connection (and thus immediate send as the next action)
-        for (BLEDevice target : targets) {
-            taskConnectDevice(target);
+    };
+
+    /// Retry delivery to immediate send targets that were deferred by the previous delivery.
+    private void taskImmediateSendDeferred() {
+        if (immediateSendDeferredTargets.isEmpty()) {
+            return;
         }
-        return true; // fire and forget
+        final List<BLEDevice> targets = new ArrayList<>(immediateSendDeferredTargets);
+        immediateSendDeferredTargets.removeAll(targets);
+        immediateSendTargets.addAll(targets);
+        immediateSendQueue.execute(immediateSendDelivery);
     }
 
     // MARK:- Scan loop for startScan-wait-stopScan-processScanResults-wait-repeat
@@ -259,7 +409,7 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 case processed: {
                     if (receiverEnabled.get() && bluetoothStateManager.state() == BluetoothState.poweredOn) {
                         final long period = timeSincelastStateChange(now);
-                        if (period >= scanOffDurationMillis) {
+                        if (period >= scanDutyCycle.offDurationMillis()) {
                             logger.debug("scanLoopTask, start scan (process={}ms)", period);
                             final BluetoothLeScanner bluetoothLeScanner = bluetoothLeScanner();
                             if (bluetoothLeScanner == null) {
@@ -299,7 +449,7 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 case scanStopped: {
                     if (bluetoothStateManager.state() == BluetoothState.poweredOn) {
                         final long period = timeSincelastStateChange(now);
-                        if (period >= scanRestDurationMillis) {
+                        if (period >= scanDutyCycle.restDurationMillis()) {
                             logger.debug("scanLoopTask, start processing (stop={}ms)", period);
                             state(now, ScanLoopState.processing);
                             processScanResults(new Callback<Boolean>() {
@@ -431,15 +581,38 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     /// Process scan results.
     private void processScanResults() {
         final long t0 = System.currentTimeMillis();
-        logger.debug("processScanResults (results={})", scanResults.size());
+        logger.debug("processScanResults (results={})", scanResults);
         // Identify devices discovered in last scan
         final List<BLEDevice> didDiscover = didDiscover();
+        final long tDidDiscover = System.currentTimeMillis();
+        metrics.stage(BLEReceiverMetrics.Stage.didDiscover, tDidDiscover - t0);
         taskRemoveExpiredDevices();
+        final long tRemoveExpiredDevices = System.currentTimeMillis();
+        metrics.stage(BLEReceiverMetrics.Stage.removeExpiredDevices, tRemoveExpiredDevices - tDidDiscover);
         taskCorrectConnectionStatus();
-        taskConnect(didDiscover);
+        final long tCorrectConnectionStatus = System.currentTimeMillis();
+        metrics.stage(BLEReceiverMetrics.Stage.correctConnectionStatus, tCorrectConnectionStatus - tRemoveExpiredDevices);
+        final int pendingDevices = taskConnect(didDiscover);
+        final long tConnect = System.currentTimeMillis();
+        metrics.stage(BLEReceiverMetrics.Stage.connect, tConnect - tCorrectConnectionStatus);
+        metrics.devicesSkippedForBudget(pendingDevices);
+        taskImmediateSendDeferred();
         taskLegacyAdvertOnlyProtocolService(didDiscover);
         final long t1 = System.currentTimeMillis();
-        logger.debug("processScanResults (results={},devices={},elapsed={}ms)", scanResults.size(), didDiscover.size(), (t1 - t0));
+        metrics.stage(BLEReceiverMetrics.Stage.legacyAdvertOnlyProtocolService, t1 - tConnect);
+        metrics.stage(BLEReceiverMetrics.Stage.processScanResults, t1 - t0);
+        // Adapt scan duty cycle to device density
+        final Set<BLEDevice> discovered = new HashSet<>(didDiscover);
+        int newDevices = 0;
+        for (final BLEDevice device : discovered) {
+            if (!previouslyDiscovered.contains(device)) {
+                newDevices++;
+            }
+        }
+        previouslyDiscovered = discovered;
+        final BLEScanDutyCycle.Decision decision = scanDutyCycle.update(t1, newDevices, pendingDevices);
+        metrics.scanDutyCycle(decision, scanDutyCycle.restDurationMillis(), scanDutyCycle.offDurationMillis(), scanDutyCycle.discoveryRatePerMinute());
+        logger.debug("processScanResults (results={},devices={},elapsed={}ms,dutyCycle={})", scanResults, didDiscover.size(), (t1 - t0), scanDutyCycle);
     }
 
     // MARK:- didDiscover
@@ -451,30 +624,29 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
      * 3. Identify operating system where possible
      */
     private List<BLEDevice> didDiscover() {
-        // Take current copy of concurrently modifiable scan results
-        final List<ScanResult> scanResultList = new ArrayList<>(scanResults.size());
-        while (scanResults.size() > 0) {
-            scanResultList.add(scanResults.poll());
-        }
+        // Take current copy of concurrently modifiable scan results, coalesced by address
+        final List<BLEScanResultBuffer.Entry<ScanResult>> scanResultList = scanResults.drain();
 
-        // Process scan results and return devices created/updated in scan results
+        // Process latest scan result for each address and return devices created/updated in scan results
         logger.debug("didDiscover (scanResults={})", scanResultList.size());
+        metrics.scanResultsOut(scanResultList.size());
         final Set<BLEDevice> deviceSet = new HashSet<>();
         final List<BLEDevice> devices = new ArrayList<>();
-        for (ScanResult scanResult : scanResultList) {
-            final BLEDevice device = database.device(scanResult);
+        // Single pass classification of each scan record, shared with database and device filter
+        final BLEAdvertClassification classification = new BLEAdvertClassification();
+        for (BLEScanResultBuffer.Entry<ScanResult> entry : scanResultList) {
+            final ScanResult scanResult = entry.record();
+            classification.classify(scanResult.getScanRecord() == null ? null : scanResult.getScanRecord().getBytes());
+            final BLEDevice device = database.device(scanResult, classification);
             if (deviceSet.add(device)) {
-                logger.debug("didDiscover (device={})", device);
+                logger.debug("didDiscover (device={},scanResults={})", device, entry);
                 devices.add(device);
             }
             // Set scan record
             device.scanRecord(scanResult.getScanRecord());
             // Set TX power level
-            if (device.scanRecord() != null) {
-                int txPowerLevel = device.scanRecord().getTxPowerLevel();
-                if (txPowerLevel != Integer.MIN_VALUE) {
-                    device.txPower(new BLE_TxPower(txPowerLevel));
-                }
+            if (classification.txPower() != Integer.MIN_VALUE) {
+                device.txPower(new BLE_TxPower(classification.txPower()));
             }
             // Identify operating system from scan record where possible
             // - Sensor service found + Manufacturer is Apple -> iOS (Foreground)
@@ -483,11 +655,11 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             // - Sensor service not found + Manufacturer not Apple -> Ignore (shouldn't be possible as we are scanning for Apple or with service)
             // - OpenTrace service found + Manufacturer is Apple -> iOS (Foreground)
             // - OpenTrace service found + Manufactuerr not Apple -> Android
-            final boolean hasSensorService = hasSensorService(scanResult);
-            final boolean hasOpenTraceService = hasOpenTraceService(scanResult);
-            final boolean isAppleDevice = isAppleDevice(scanResult);
+            final boolean hasSensorService = classification.hasSensorService();
+            final boolean hasOpenTraceService = classification.hasOpenTraceService();
+            final boolean isAppleDevice = classification.isAppleDevice();
             if (hasOpenTraceService) {
-                device.operatingSystem(isOpenTraceAndroidDevice(scanResult) ? BLEDeviceOperatingSystem.android : BLEDeviceOperatingSystem.ios);
+                device.operatingSystem(classification.isOpenTraceAndroidDevice() ? BLEDeviceOperatingSystem.android : BLEDeviceOperatingSystem.ios);
             } else if (hasSensorService && isAppleDevice) {
                 // Definitely iOS device offering sensor service in foreground mode
                 device.operatingSystem(BLEDeviceOperatingSystem.ios);
@@ -498,7 +670,7 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 }
             } else if (isAppleDevice) { // !hasSensorService implied
                 // Filter device by advert messages unless it is already confirmed ios device
-                final BLEDeviceFilter.MatchingPattern matchingPattern = deviceFilter.match(device);
+                final BLEDeviceFilter.MatchingPattern matchingPattern = deviceFilter.match(device, classification);
                 if (device.operatingSystem() != BLEDeviceOperatingSystem.ios && matchingPattern != null) {
                     logger.fault("didDiscover, ignoring filtered device (device={},pattern={},message={})", device, matchingPattern.filterPattern.regularExpression, matchingPattern.message);
                     device.operatingSystem(BLEDeviceOperatingSystem.ignore);
@@ -528,71 +700,6 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         return devices;
     }
 
-    /// Does scan result include advert for sensor service?
-    private static boolean hasSensorService(final ScanResult scanResult) {
-        final ScanRecord scanRecord = scanResult.getScanRecord();
-        if (scanRecord == null) {
-            return false;
-        }
-        final List<ParcelUuid> serviceUuids = scanRecord.getServiceUuids();
-        if (serviceUuids == null || serviceUuids.size() == 0) {
-            return false;
-        }
-        for (ParcelUuid serviceUuid : serviceUuids) {
-            if (serviceUuid.getUuid().equals(BLESensorConfiguration.serviceUUID)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /// Does scan result indicate device was manufactured by Apple?
-    private static boolean isAppleDevice(final ScanResult scanResult) {
-        final ScanRecord scanRecord = scanResult.getScanRecord();
-        if (scanRecord == null) {
-            return false;
-        }
-        final byte[] data = scanRecord.getManufacturerSpecificData(BLESensorConfiguration.manufacturerIdForApple);
-        return data != null;
-    }
-
-    /// Does scan result indicate device is OpenTrace Android (true) or iOS (false) device?
-    private static boolean isOpenTraceAndroidDevice(final ScanResult scanResult) {
-        if (!BLESensorConfiguration.interopOpenTraceEnabled) {
-            return false;
-        }
-        final ScanRecord scanRecord = scanResult.getScanRecord();
-        if (scanRecord == null) {
-            return false;
-        }
-        if (scanRecord.getManufacturerSpecificData().size() == 0) {
-            return false;
-        }
-        final byte[] data = scanRecord.getManufacturerSpecificData(BLESensorConfiguration.interopOpenTraceManufacturerId);
-        return data != null;
-    }
-
-    /// Does scan result include advert for OpenTrace service?
-    private static boolean hasOpenTraceService(final ScanResult scanResult) {
-        if (!BLESensorConfiguration.interopOpenTraceEnabled) {
-            return false;
-        }
-        final ScanRecord scanRecord = scanResult.getScanRecord();
-        if (scanRecord == null) {
-            return false;
-        }
-        final List<ParcelUuid> serviceUuids = scanRecord.getServiceUuids();
-        if (serviceUuids == null || serviceUuids.size() == 0) {
-            return false;
-        }
-        for (ParcelUuid serviceUuid : serviceUuids) {
-            if (serviceUuid.getUuid().equals(BLESensorConfiguration.interopOpenTraceServiceUUID)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     // MARK:- Legacy advertising only protocol service
 
     private void taskLegacyAdvertOnlyProtocolService(final List<BLEDevice> discovered) {
@@ -669,166 +776,118 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     // is likely to have changed after being out of range for over 20 minutes,
     // so it will require discovery. Discovery is fast and cheap on Android.
     private void taskRemoveExpiredDevices() {
-        final List<BLEDevice> devicesToRemove = new ArrayList<>();
-        for (BLEDevice device : database.devices()) {
-            if (device.timeIntervalSinceLastUpdate().value > TimeInterval.minutes(15).value) {
-                devicesToRemove.add(device);
-            }
-        }
-        for (BLEDevice device : devicesToRemove) {
+        for (BLEDevice device : database.expiredDevices()) {
             logger.debug("taskRemoveExpiredDevices (remove={})", device);
             database.delete(device);
+            profiledOperatingSystem.remove(device);
         }
     }
 
     /// Connections should not be held for more than 1 minute, likely to have not received onConnectionStateChange callback.
     private void taskCorrectConnectionStatus() {
-        for (BLEDevice device : database.devices()) {
-            if (device.state() == BLEDeviceState.connected && device.timeIntervalSinceConnected().value > TimeInterval.minute.value) {
-                logger.debug("taskCorrectConnectionStatus (device={})", device);
-                device.state(BLEDeviceState.disconnected);
-            }
+        for (BLEDevice device : database.expiredConnections()) {
+            logger.debug("taskCorrectConnectionStatus (device={})", device);
+            device.state(BLEDeviceState.disconnected);
+            connector.stateChanged(device);
         }
     }
 
 
     // MARK:- Connect task
 
-    private void taskConnect(final List<BLEDevice> discovered) {
-        // Clever connection prioritisation is pointless here as devices
-        // like the Samsung A10 and A20 changes mac address on every scan
-        // call, so optimising new device handling is more effective.
-        final long timeStart = System.currentTimeMillis();
-        int devicesProcessed = 0;
-        for (BLEDevice device : discovered) {
-            // Stop process if exceeded time limit
-            final long elapsedTime = System.currentTimeMillis() - timeStart;
-            if (elapsedTime >= scanProcessDurationMillis) {
-                logger.debug("taskConnect, reached time limit (elapsed={}ms,limit={}ms)", elapsedTime, scanProcessDurationMillis);
-                break;
-            }
-            if (devicesProcessed > 0) {
-                final long predictedElapsedTime = Math.round((elapsedTime / (double) devicesProcessed) * (devicesProcessed + 1));
-                if (predictedElapsedTime > scanProcessDurationMillis) {
-                    logger.debug("taskConnect, likely to exceed time limit soon (elapsed={}ms,devicesProcessed={},predicted={}ms,limit={}ms)", elapsedTime, devicesProcessed, predictedElapsedTime, scanProcessDurationMillis);
-                    break;
+    /// Connect to discovered devices with pending tasks, returns number of devices with pending
+    /// tasks that were not processed within the time limit.
+    private int taskConnect(final List<BLEDevice> discovered) {
+        final List<BLEDevice> prioritised = prioritise(discovered);
+        // Next task may have changed since prioritisation, e.g. completed by immediate send
+        final Map<BLEDevice, NextTask> nextTasks = new ConcurrentHashMap<>();
+        final BLEConnectionScheduler.Result result = connectionScheduler.connect(prioritised, new Predicate<BLEDevice>() {
+            @Override
+            public boolean test(BLEDevice device) {
+                final NextTask nextTask = nextTaskForDevice(device);
+                if (nextTask == NextTask.nothing) {
+                    logger.debug("taskConnect, no pending action (device={})", device);
+                    return false;
                 }
+                nextTasks.put(device, nextTask);
+                return true;
+            }
+        }, new Callback<BLEDevice>() {
+            @Override
+            public void accept(BLEDevice device) {
+                final BLEDeviceOperatingSystem operatingSystem = device.operatingSystem();
+                final long timeStart = System.currentTimeMillis();
+                taskConnectDevice(device);
+                registerConnectionDuration(operatingSystem, nextTasks.get(device), System.currentTimeMillis() - timeStart);
+            }
+        }, scanProcessDurationMillis);
+        // Devices rejected by the predicate above have no pending tasks, thus only devices left
+        // unvisited when the time limit was reached are pending
+        return result.devicesSkipped;
+    }
+
+    /// Order devices with pending tasks for connection, excluding devices without pending tasks.
+    List<BLEDevice> prioritise(final List<BLEDevice> discovered) {
+        // Devices like the Samsung A10 and A20 change mac address on every scan
+        // call, so connections are prioritised by the value of the next task for
+        // the device relative to its expected duration, rather than by device
+        // history, to complete the most valuable work within the time limit.
+        return connectionPriority.order(discovered, new BLEConnectionPriority.Valuation<NextTask>() {
+            @Override
+            public NextTask task(BLEDevice device) {
+                final NextTask nextTask = nextTaskForDevice(device);
+                return (nextTask == NextTask.nothing ? null : nextTask);
             }
-            if (nextTaskForDevice(device) == NextTask.nothing) {
-                logger.debug("taskConnect, no pending action (device={})", device);
-                continue;
+
+            @Override
+            public double value(BLEDevice device, NextTask task) {
+                return nextTaskValue(device, task);
             }
-            taskConnectDevice(device);
-            devicesProcessed++;
+        });
+    }
+
+    /// Register duration of connection for performing task on device, for prioritising connections.
+    void registerConnectionDuration(final BLEDeviceOperatingSystem operatingSystem, final NextTask task, final long durationMillis) {
+        connectionPriority.add(operatingSystem, task, durationMillis);
+    }
+
+    /// Expected value of performing task on device, for prioritising connections.
+    static double nextTaskValue(final BLEDevice device, final NextTask task) {
+        switch (task) {
+            case immediateSend:
+                return 10;
+            case readPayload:
+                if (device.payloadData() == null) {
+                    // Payload read is less likely to succeed if device may not be offering sensor service
+                    return (device.operatingSystem() == BLEDeviceOperatingSystem.unknown || device.operatingSystem() == BLEDeviceOperatingSystem.ios_tbc ? 2 : 5);
+                }
+                // Payload update or operating system confirmation
+                return 1;
+            case writePayload:
+            case writePayloadSharing:
+            case writeRSSI:
+                return 1;
+            case readModel:
+            case readDeviceName:
+                return 0.5;
+            default:
+                return 0;
         }
     }
 
     private boolean taskConnectDevice(final BLEDevice device) {
-        if (device.state() == BLEDeviceState.connected) {
-            logger.debug("taskConnectDevice, already connected to transmitter (device={})", device);
+        final BLEConnector.Result result = connector.connect(device);
+        if (result == BLEConnector.Result.alreadyConnected) {
             return true;
         }
-        // Connect (timeout at 95% = 2 SD)
-        final long timeConnect = System.currentTimeMillis();
-        logger.debug("taskConnectDevice, connect (device={})", device);
-        device.state(BLEDeviceState.connecting);
-        BluetoothGatt gatt = null;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            // API 23 and above - force Low Energy only
-            gatt = device.peripheral().connectGatt(context, false, this, BluetoothDevice.TRANSPORT_LE);
-        } else {
-            // support back to API 21
-            gatt = device.peripheral().connectGatt(context, false, this);
-        }
-        if (gatt == null) {
-            logger.fault("taskConnectDevice, connect failed (device={})", device);
-            device.state(BLEDeviceState.disconnected);
-            return false;
-        }
-        // Wait for connection
-        // A connect request should normally result in .connected or .disconnected state which is
-        // set asynchronously by the callback function onConnectionStateChange(). However, some
-        // connections may get stuck in a .connecting state indefinitely due to BLE issues, and
-        // therefore the callback function is never called, leaving the device in a limbo state.
-        // As such, the follow loop runs for a fixed duration (established through experimentation)
-        // to check if connection was successful, else abort the connection to put the device in
-        // a consistent default .disconnected state.
-        while (device.state() != BLEDeviceState.connected && device.state() != BLEDeviceState.disconnected && (System.currentTimeMillis() - timeConnect) < timeToConnectDeviceLimitMillis) {
-            try {
-                Thread.sleep(200);
-            } catch (Throwable e) {
-                logger.fault("Timer interrupted", e);
-            }
-        }
-        if (device.state() != BLEDeviceState.connected) {
-            // Failed to establish connection within time limit, assume connection failure
-            // and disconnect device to put it in a consistent default .disconnected state
-            logger.fault("taskConnectDevice, connect timeout (device={})", device);
-            try {
-                gatt.close();
-            } catch (Throwable e) {
-                logger.fault("taskConnectDevice, close failed (device={})", device, e);
-            }
+        if (result == BLEConnector.Result.connectFailed || result == BLEConnector.Result.connectTimeout) {
             return false;
-        } else {
-            // Connection was successful, make note of time to establish connection to
-            // inform setting of timeToConnectDeviceLimitMillis. A previous implementation
-            // used an adaptive algorithm to adjust this parameter according to device
-            // capability, but that was deemed too unreliable for minimal gain in
-            // performance, as the target device plays a big part in determining the
-            // connection time, and that can be unpredictable due to environment factors.
-            final long connectElapsed = System.currentTimeMillis() - timeConnect;
-            // Add sample to adaptive connection timeout
-            timeToConnectDevice.add(connectElapsed);
-            logger.debug("taskConnectDevice, connected (device={},elapsed={}ms,statistics={})", device, connectElapsed, timeToConnectDevice);
-        }
-        // Wait for disconnection
-        // Device is connected at this point, and all the actual work is being
-        // performed asynchronously by callback methods outside of this function.
-        // As such, the only work required here at this point is to keep track
-        // of connection time, to ensure a connection is not held for too long
-        // e.g. due to BLE issues. The following code waits for device state change
-        // from .connected to .disconnected, which is normally set asynchronously
-        // by the callback function onConnectionStateChange(), once all the tasks
-        // for the device have been completed. If the connection has been held
-        // too long, then this function will force a disconnection by calling
-        // gatt.close() to disconnect device to put it in a consistent default
-        // .disconnected state.
-        while (device.state() != BLEDeviceState.disconnected && (System.currentTimeMillis() - timeConnect) < scanProcessDurationMillis) {
-            try {
-                Thread.sleep(500);
-            } catch (Throwable e) {
-                logger.fault("Timer interrupted", e);
-            }
-        }
-        boolean success = true;
-        // Timeout connection if required, and always set state to disconnected
-        if (device.state() != BLEDeviceState.disconnected) {
-            // Failed to complete tasks and disconnect within time limit, assume failure
-            // and disconnect device to put it in a consistent default .disconnected state
-            logger.fault("taskConnectDevice, disconnect timeout (device={})", device);
-            try {
-                gatt.close();
-            } catch (Throwable e) {
-                logger.fault("taskConnectDevice, close failed (device={})", device, e);
-            }
-            success = false;
-        }
-        // Always set state to .disconnected at the end
-        device.state(BLEDeviceState.disconnected);
-        final long timeDisconnect = System.currentTimeMillis();
-        final long timeElapsed = (timeDisconnect - timeConnect);
-        if (success) {
-            timeToProcessDevice.add(timeElapsed);
-            logger.debug("taskConnectDevice, complete (success=true,device={},elapsed={}ms,statistics={})", device, timeElapsed, timeToProcessDevice);
-        } else {
-            logger.fault("taskConnectDevice, complete (success=false,device={},elapsed={}ms)", device, timeElapsed);
         }
         // Train device filter
         if (BLESensorConfiguration.deviceFilterTrainingEnabled) {
             deviceFilter.train(device, device.payloadCharacteristic() == null);
         }
-        return success;
+        return result == BLEConnector.Result.success;
     }
 
     // MARK:- BluetoothStateManagerDelegate
@@ -839,10 +898,21 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         logger.debug("onConnectionStateChange (device={},status={},state={})", device, bleStatus(status), bleState(newState));
         if (newState == BluetoothProfile.STATE_CONNECTED) {
             device.state(BLEDeviceState.connected);
+            clearConnectionState(device);
+            connector.stateChanged(device);
             gatt.discoverServices();
         } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
             gatt.close();
             device.state(BLEDeviceState.disconnected);
+            clearConnectionState(device);
+            // Operating system set by cached profile was not confirmed by discovery on this
+            // connection, revert it so the profile is applied again for the next connection
+            if (profiledOperatingSystem.remove(device) && (device.operatingSystem() == BLEDeviceOperatingSystem.ios || device.operatingSystem() == BLEDeviceOperatingSystem.android)) {
+                device.operatingSystem(BLEDeviceOperatingSystem.unknown);
+            }
+            immediateSendOutbox.connectionEnded(device);
+            taskCompleted(device);
+            connector.stateChanged(device);
             if (status != 0) {
                 logger.fault("onConnectionStateChange (device={},status={},state={})", device, bleStatus(status), bleState(newState));
             }
@@ -863,6 +933,14 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         }
         if (service == null) {
             logger.fault("onServicesDiscovered, missing sensor service (device={})", device);
+            // Cached profile was wrong, revert operating system set by profile
+            if (BLESensorConfiguration.deviceProfileCacheEnabled) {
+                profileCache.invalidate(device);
+                if (profiledOperatingSystem.remove(device)) {
+                    logger.fault("onServicesDiscovered, invalidated profile (device={},reason=missingSensorService)", device);
+                    device.operatingSystem(BLEDeviceOperatingSystem.unknown);
+                }
+            }
             if (!BLESensorConfiguration.deviceFilterTrainingEnabled) {
                 // Ignore device for a while unless it is a confirmed iOS or Android device,
                 // where the sensor service has been found before, so ignore for a limited
@@ -908,6 +986,8 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             if (device.payloadCharacteristic() == null && device.legacyPayloadCharacteristic() != null) {
                 device.payloadCharacteristic(device.legacyPayloadCharacteristic());
             }
+            // Operating system has been confirmed or corrected by discovery
+            profiledOperatingSystem.remove(device);
         }
 
         // Device characteristics : Enabled if either device introspection or device filter training is enabled
@@ -928,6 +1008,11 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             }
         }
 
+        // Update cached profile with discovered layout
+        if (BLESensorConfiguration.deviceProfileCacheEnabled && service != null) {
+            updateProfile(device);
+        }
+
         nextTask(gatt);
     }
 
@@ -953,10 +1038,12 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     /// This function inspects the device state and information to
     /// determine the next task to perform, if any, for the device
     /// while it is connected. Please note, service and characteristic
-    /// discovery must be performed (cannot be cached) on the device
-    /// on each connection, thus it makes sense to do as much as possible
-    /// once a connection has been established with the target device.
-    private NextTask nextTaskForDevice(final BLEDevice device) {
+    /// discovery must be performed on the device on each connection to
+    /// obtain the characteristics, thus it makes sense to do as much as
+    /// possible once a connection has been established with the target
+    /// device. A cached profile of a re-identified device can only inform
+    /// planning of tasks before discovery, see applyProfile().
+    NextTask nextTaskForDevice(final BLEDevice device) {
         // No task for devices marked as .ignore
         if (device.ignore()) {
             logger.debug("nextTaskForDevice, ignore (device={},ignoreExpiresIn={})", device, device.timeIntervalUntilIgnoreExpires());
@@ -971,6 +1058,10 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         if (device.receiveOnly()) {
             return NextTask.nothing;
         }
+        // Plan with cached profile for devices that have not been discovered yet
+        if (BLESensorConfiguration.deviceProfileCacheEnabled) {
+            applyProfile(device);
+        }
         // Device introspection to resolve device model if enabled and possible
         if (BLESensorConfiguration.deviceIntrospectionEnabled && device.supportsModelCharacteristic() && device.model() == null) {
             logger.debug("nextTaskForDevice (device={},task=readModel)", device);
@@ -990,7 +1081,7 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         }
         // Immediate send is supported only if service and characteristics
         // have been discovered, and operating system has been confirmed
-        if (device.immediateSendData() != null) {
+        if (immediateSendOutbox.pending(device)) {
             return NextTask.immediateSend;
         }
         // Get payload as top priority
@@ -1051,6 +1142,59 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         return NextTask.nothing;
     }
 
+    /// Apply cached profile to re-identified device that has not been discovered yet, to confirm
+    /// operating system without reading payload, and restore model and device name without
+    /// introspection reads. Discovery on connection replaces the profile, and an operating system
+    /// set by a wrong profile is reverted if the sensor service is missing.
+    private void applyProfile(final BLEDevice device) {
+        if (device.signalCharacteristic() != null || device.payloadCharacteristic() != null) {
+            return;
+        }
+        final boolean operatingSystemUnconfirmed = (device.operatingSystem() == BLEDeviceOperatingSystem.unknown ||
+                device.operatingSystem() == BLEDeviceOperatingSystem.ios_tbc ||
+                device.operatingSystem() == BLEDeviceOperatingSystem.android_tbc);
+        if (!operatingSystemUnconfirmed && device.model() != null && device.deviceName() != null) {
+            return;
+        }
+        final BLEDeviceProfileCache.Profile profile = profileCache.get(device);
+        if (profile == null) {
+            return;
+        }
+        if (operatingSystemUnconfirmed && (profile.operatingSystem == BLEDeviceOperatingSystem.ios || profile.operatingSystem == BLEDeviceOperatingSystem.android)) {
+            device.operatingSystem(profile.operatingSystem);
+            profiledOperatingSystem.add(device);
+        }
+        if (device.model() == null && profile.model != null) {
+            device.model(profile.model);
+        }
+        if (device.deviceName() == null && profile.deviceName != null) {
+            device.deviceName(profile.deviceName);
+        }
+        logger.debug("applyProfile (device={},profile={},cache={})", device, profile, profileCache);
+    }
+
+    /// Update cached profile of device after discovery or introspection.
+    private void updateProfile(final BLEDevice device) {
+        final BLEDeviceProfileCache.Profile profile = new BLEDeviceProfileCache.Profile(device);
+        if (!profileCache.put(device, profile)) {
+            logger.debug("updateProfile, invalidated previous profile (device={},profile={})", device, profile);
+        }
+    }
+
+    /// Record duration of task in progress on device, which has completed when the next task is
+    /// started or the device has disconnected.
+    private void taskCompleted(final BLEDevice device) {
+        final TaskTiming taskTiming = taskTimings.remove(device);
+        if (taskTiming != null) {
+            metrics.task(taskTiming.operatingSystem, taskTiming.task.name(), System.currentTimeMillis() - taskTiming.startedAt);
+        }
+    }
+
+    /// Clear state of previous connection to device on connection and disconnection.
+    private void clearConnectionState(final BLEDevice device) {
+        negotiatedMTU.remove(device);
+    }
+
     /// Given an open connection, perform the next task for the device.
     /// Use this function to define the actual code for implementing
     /// a task on the device (e.g. readPayload). The actual priority
@@ -1059,6 +1203,10 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
     private void nextTask(BluetoothGatt gatt) {
         final BLEDevice device = database.device(gatt.getDevice());
         final NextTask nextTask = nextTaskForDevice(device);
+        taskCompleted(device);
+        if (nextTask != NextTask.nothing) {
+            taskTimings.put(device, new TaskTiming(nextTask, device.operatingSystem()));
+        }
         switch (nextTask) {
             case readModel: {
                 final BluetoothGattCharacteristic modelCharacteristic = device.modelCharacteristic();
@@ -1127,7 +1275,8 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 return;
             }
             case writePayloadSharing: {
-                final PayloadSharingData payloadSharingData = database.payloadSharingData(device);
+                final List<PayloadData> newPayloads = new ArrayList<>();
+                final PayloadSharingData payloadSharingData = database.payloadSharingData(device, newPayloads);
                 if (payloadSharingData == null) {
                     logger.fault("nextTask failed (task=writePayloadSharing,device={},reason=missingPayloadSharingData)", device);
                     gatt.disconnect();
@@ -1135,6 +1284,8 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 }
                 final Data data = SignalCharacteristicData.encodeWritePayloadSharing(payloadSharingData);
                 logger.debug("nextTask (task=writePayloadSharing,device={},dataLength={})", device, data.value.length);
+                // Payloads are recorded as shared with the device on successful write
+                device.payloadSharingWriteValue = newPayloads;
                 writeSignalCharacteristic(gatt, NextTask.writePayloadSharing, data.value);
                 return;
             }
@@ -1163,7 +1314,9 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                     gatt.disconnect();
                     return;
                 }
-                final Data data = device.immediateSendData(); // already encoded (arbitrary data with header)
+                // Only Android receivers reassemble and separate coalesced bundles, iOS receivers decode one bundle per write
+                final boolean coalesce = (device.signalCharacteristic() != null && BLESensorConfiguration.androidSignalCharacteristicUUID.equals(device.signalCharacteristic().getUuid()));
+                final Data data = immediateSendOutbox.next(device, coalesce); // already encoded (arbitrary data with header)
                 if (data == null) {
                     logger.fault("nextTask failed (task=immediateSend,device={},reason=missingImmediateSendData)", device);
                     gatt.disconnect();
@@ -1171,7 +1324,6 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 }
                 logger.debug("nextTask (task=immediateSend,device={},dataLength={})", device, data.value.length);
                 writeSignalCharacteristic(gatt, NextTask.immediateSend, data.value);
-                device.immediateSendData(null); // remove data to ensure it gets sent
                 return;
             }
         }
@@ -1208,7 +1360,18 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         }
         if (signalCharacteristic.getUuid().equals(BLESensorConfiguration.androidSignalCharacteristicUUID)) {
             device.signalCharacteristicWriteValue = data;
-            device.signalCharacteristicWriteQueue = fragmentDataByMtu(data);
+            device.signalCharacteristicWriteQueue = null;
+            // Negotiate MTU on first write that requires fragmentation in this connection
+            final Integer mtu = negotiatedMTU.get(device);
+            if (mtu == null && data.length > BLEWriteFragments.defaultFragmentSize) {
+                if (gatt.requestMtu(requestMTU)) {
+                    logger.debug("writeSignalCharacteristic to Android, request MTU (task={},dataLength={},device={})", task, data.length, device);
+                    return; // => onMtuChanged
+                }
+                logger.fault("writeSignalCharacteristic to Android, request MTU failed (task={},device={})", task, device);
+                negotiatedMTU.put(device, BLEWriteFragments.defaultFragmentSize + 3);
+            }
+            device.signalCharacteristicWriteQueue = new BLEWriteFragments(data, BLEWriteFragments.fragmentSize(mtu == null ? 0 : mtu));
             if (writeAndroidSignalCharacteristic(gatt) == WriteAndroidSignalCharacteristicResult.failed) {
                 logger.fault("writeSignalCharacteristic to Android failed (task={},device={},reason=writeCharacteristicFailed)", task, device);
                 gatt.disconnect();
@@ -1247,25 +1410,27 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         }
     }
 
-    /// Split data into fragments, where each fragment has length <= mtu
-    private Queue<byte[]> fragmentDataByMtu(byte[] data) {
-        final Queue<byte[]> fragments = new ConcurrentLinkedQueue<>();
-        for (int i = 0; i < data.length; i += ConcreteBLEReceiver.defaultMTU) {
-            final byte[] fragment = new byte[Math.min(ConcreteBLEReceiver.defaultMTU, data.length - i)];
-            System.arraycopy(data, i, fragment, 0, fragment.length);
-            fragments.add(fragment);
-        }
-        return fragments;
-    }
-
     /// Interoperability with OpenTrace
     /// If nextTask=readPayload, rather than calling readCharacteristic directly, OpenTrace requires
     /// MTU to be set to 512, before reading the actual payload. While HERALD handles fragmentation
     /// internally, OpenTrace relies on setting the MTU to support reading of large payloads.
+    /// Signal characteristic writes to Android request MTU before fragmenting data to fit
+    /// within the negotiated MTU, falling back to default MTU if the request failed.
     @Override
     public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
         final BLEDevice device = database.device(gatt.getDevice());
-        logger.debug("onMtuChanged (device={},status={})", device, bleStatus(status));
+        logger.debug("onMtuChanged (device={},status={},mtu={})", device, bleStatus(status), mtu);
+        negotiatedMTU.put(device, (status == BluetoothGatt.GATT_SUCCESS ? mtu : BLEWriteFragments.defaultFragmentSize + 3));
+        // Pending signal characteristic write
+        final byte[] signalCharacteristicWriteValue = device.signalCharacteristicWriteValue;
+        if (signalCharacteristicWriteValue != null && device.signalCharacteristicWriteQueue == null) {
+            device.signalCharacteristicWriteQueue = new BLEWriteFragments(signalCharacteristicWriteValue, BLEWriteFragments.fragmentSize(negotiatedMTU.get(device)));
+            if (writeAndroidSignalCharacteristic(gatt) == WriteAndroidSignalCharacteristicResult.failed) {
+                logger.fault("onMtuChanged, write signal characteristic failed (device={},reason=writeCharacteristicFailed)", device);
+                gatt.disconnect();
+            }
+            return; // => onCharacteristicWrite
+        }
         final BluetoothGattCharacteristic characteristic = device.legacyPayloadCharacteristic();
         if (status == BluetoothGatt.GATT_SUCCESS && characteristic != null && gatt.readCharacteristic(characteristic)) {
             logger.debug("nextTask (task=readPayload|legacy,device={})", device);
@@ -1307,6 +1472,10 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 if (payloadData != null) {
                     logger.debug("onCharacteristicRead, read payload data success (device={},payload={})", device, payloadData.shortName());
                     device.payloadData(payloadData);
+                    // Key cached profile by payload for re-identifying device after address change
+                    if (BLESensorConfiguration.deviceProfileCacheEnabled) {
+                        updateProfile(device);
+                    }
                     // TODO incorporate Android non-auth security patch once license confirmed
                 } else {
                     logger.fault("onCharacteristicRead, read payload data failed, no data (device={})", device);
@@ -1336,6 +1505,9 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 if (model != null) {
                     logger.debug("onCharacteristicRead, read model data success (device={},model={})", device, model);
                     device.model(model);
+                    if (BLESensorConfiguration.deviceProfileCacheEnabled) {
+                        updateProfile(device);
+                    }
                 } else {
                     logger.fault("onCharacteristicRead, read model data failed, no data (device={})", device);
                 }
@@ -1348,6 +1520,9 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
                 if (deviceName != null) {
                     logger.debug("onCharacteristicRead, read deviceName data success (device={},deviceName={})", device, deviceName);
                     device.deviceName(deviceName);
+                    if (BLESensorConfiguration.deviceProfileCacheEnabled) {
+                        updateProfile(device);
+                    }
                 } else {
                     logger.fault("onCharacteristicRead, read deviceName data failed, no data (device={})", device);
                 }
@@ -1387,6 +1562,8 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
         signalCharacteristic.setValue(new byte[0]);
         device.signalCharacteristicWriteValue = null;
         device.signalCharacteristicWriteQueue = null;
+        final List<PayloadData> payloadSharingWriteValue = device.payloadSharingWriteValue;
+        device.payloadSharingWriteValue = null;
         switch (signalCharacteristicDataType) {
             case payload:
                 if (success) {
@@ -1407,6 +1584,11 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             case payloadSharing:
                 if (success) {
                     logger.debug("onCharacteristicWrite, write payload sharing success (device={})", device);
+                    if (payloadSharingWriteValue != null) {
+                        for (final PayloadData payloadData : payloadSharingWriteValue) {
+                            device.payloadSharingData.add(payloadData);
+                        }
+                    }
                     device.registerWritePayloadSharing();
                 } else {
                     logger.fault("onCharacteristicWrite, write payload sharing failed (device={})", device);
@@ -1415,14 +1597,17 @@ public class ConcreteBLEReceiver extends BluetoothGattCallback implements BLERec
             case immediateSend:
                 if (success) {
                     logger.debug("onCharacteristicWrite, write immediate send data success (device={})", device);
-                    device.immediateSendData(null);
                 } else {
                     logger.fault("onCharacteristicWrite, write immediate send data failed (device={})", device);
-                    // No retry for immediate send
-                    device.immediateSendData(null);
                 }
-                // Close connection immediately upon completion of immediate send
-                gatt.disconnect();
+                // No retry for immediate send
+                immediateSendOutbox.completed(device, success);
+                // Write messages queued since connection, then close connection immediately
+                if (success && immediateSendOutbox.pending(device)) {
+                    nextTask(gatt);
+                } else {
+                    gatt.disconnect();
+                }
                 // Do not perform any other tasks
                 return;
             default:
@@ -21,6 +21,7 @@ import com.vmware.herald.sensor.SensorDelegate;
 import com.vmware.herald.sensor.datatype.TargetIdentifier;
 import com.vmware.herald.sensor.datatype.TimeInterval;
 
+import java.io.File;
 import java.util.Date;
 import java.util.Map;
 import java.util.Queue;
@@ -40,7 +41,10 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
 
     public ConcreteBLESensor(Context context, PayloadDataSupplier payloadDataSupplier) {
         final BluetoothStateManager bluetoothStateManager = new ConcreteBluetoothStateManager(context);
-        final BLEDatabase database = new ConcreteBLEDatabase();
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        if (BLESensorConfiguration.deviceCacheSaveTimeInterval != TimeInterval.never) {
+            database.deviceCache(new BLEDeviceCache(new File(context.getCacheDir(), "devices.bin"), TimeInterval.minutes(15)), BLESensorConfiguration.deviceCacheSaveTimeInterval);
+        }
         final BLETimer timer = new BLETimer(context);
         bluetoothStateManager.delegates.add(this);
         transmitter = new ConcreteBLETransmitter(context, bluetoothStateManager, timer, payloadDataSupplier, database);
@@ -77,6 +81,19 @@ public class ConcreteBLESensor implements BLESensor, BLEDatabaseDelegate, Blueto
         return receiver.immediateSendAll(data);
     }
 
+    /// Add delegate for receiving immediate send delivery results.
+    public void add(BLEImmediateSendDelegate delegate) {
+        receiver.add(delegate);
+    }
+
+    public BLEReceiverMetrics metrics() {
+        return receiver.metrics();
+    }
+
+    public BLEGattServerMetrics gattServerMetrics() {
+        return transmitter.gattServerMetrics();
+    }
+
     // MARK:- BLEDatabaseDelegate
 
     @Override
@@ -29,7 +29,6 @@ import com.vmware.herald.sensor.datatype.Data;
 import com.vmware.herald.sensor.datatype.ImmediateSendData;
 import com.vmware.herald.sensor.datatype.PayloadData;
 import com.vmware.herald.sensor.datatype.PayloadSharingData;
-import com.vmware.herald.sensor.datatype.PayloadTimestamp;
 import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
 import com.vmware.herald.sensor.datatype.RSSI;
 import com.vmware.herald.sensor.datatype.SensorType;
@@ -40,12 +39,7 @@ import com.vmware.herald.sensor.datatype.Triple;
 import com.vmware.herald.sensor.PayloadDataSupplier;
 import com.vmware.herald.sensor.SensorDelegate;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -63,6 +57,8 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
     private final Context context;
     private final BluetoothStateManager bluetoothStateManager;
     private final PayloadDataSupplier payloadDataSupplier;
+    private final BLEPayloadDataCache payloadDataCache;
+    private final BLEGattServerMetrics gattServerMetrics = new BLEGattServerMetrics();
     private final BLEDatabase database;
     private final ExecutorService operationQueue = Executors.newSingleThreadExecutor();
     private final AtomicBoolean transmitterEnabled = new AtomicBoolean(false);
@@ -77,6 +73,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
         this.context = context;
         this.bluetoothStateManager = bluetoothStateManager;
         this.payloadDataSupplier = payloadDataSupplier;
+        this.payloadDataCache = new BLEPayloadDataCache(payloadDataSupplier);
         this.database = database;
         bluetoothStateManager.delegates.add(this);
         bluetoothStateManager(bluetoothStateManager.state());
@@ -158,7 +155,8 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
         @Override
         public void bleTimer(final long now) {
             if (!transmitterEnabled.get() || !isSupported() || bluetoothStateManager.state() == BluetoothState.poweredOff) {
-                if (advertLoopState != AdvertLoopState.stopped) {
+                // Persistent GATT server may be alive while advert is stopped
+                if (advertLoopState != AdvertLoopState.stopped || bluetoothGattServer != null) {
                     logger.debug("advertLoopTask, stopping advert following bluetooth state change (isSupported={},bluetoothPowerOff={})", isSupported(), bluetoothStateManager.state() == BluetoothState.poweredOff);
                     stopAdvert(bluetoothLeAdvertiser(), advertiseCallback, bluetoothGattServer, new Callback<Boolean>() {
                         @Override
@@ -184,11 +182,22 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                                 return;
                             }
                             state(now, AdvertLoopState.starting);
-                            startAdvert(bluetoothLeAdvertiser, new Callback<Triple<Boolean, AdvertiseCallback, BluetoothGattServer>>() {
+                            final BluetoothGattServer persistentGattServer = (BLESensorConfiguration.persistentGattServerEnabled ? bluetoothGattServer : null);
+                            startAdvert(bluetoothLeAdvertiser, persistentGattServer, new Callback<Triple<Boolean, AdvertiseCallback, BluetoothGattServer>>() {
                                 @Override
                                 public void accept(Triple<Boolean, AdvertiseCallback, BluetoothGattServer> value) {
                                     advertiseCallback = value.b;
                                     bluetoothGattServer = value.c;
+                                    if (!value.a && BLESensorConfiguration.persistentGattServerEnabled && value.c != null) {
+                                        // Rebuild persistent GATT server on next start after failure
+                                        logger.fault("advertLoopTask, start advert failed, stopping persistent GATT server");
+                                        stopAdvert(null, null, value.c, new Callback<Boolean>() {
+                                            @Override
+                                            public void accept(Boolean value) {
+                                            }
+                                        });
+                                        bluetoothGattServer = null;
+                                    }
                                     state(now, value.a ? AdvertLoopState.started : AdvertLoopState.stopped);
                                 }
                             });
@@ -199,18 +208,22 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                 case started: {
                     final long period = timeSincelastStateChange(now);
                     if (period >= BLESensorConfiguration.advertRefreshTimeInterval.millis()) {
-                        logger.debug("advertLoopTask, stop advert (advert={}ms)", period);
+                        logger.debug("advertLoopTask, stop advert (advert={}ms,gattServerMetrics={},payloadDataCache={})", period, gattServerMetrics, payloadDataCache);
                         final BluetoothLeAdvertiser bluetoothLeAdvertiser = bluetoothLeAdvertiser();
                         if (bluetoothLeAdvertiser == null) {
                             logger.fault("advertLoopTask, stop advert denied, Bluetooth LE advertiser unavailable");
                             return;
                         }
                         state(now, AdvertLoopState.stopping);
-                        stopAdvert(bluetoothLeAdvertiser, advertiseCallback, bluetoothGattServer, new Callback<Boolean>() {
+                        // Persistent GATT server is kept alive, only the advert is refreshed
+                        final boolean persistentGattServer = BLESensorConfiguration.persistentGattServerEnabled;
+                        stopAdvert(bluetoothLeAdvertiser, advertiseCallback, (persistentGattServer ? null : bluetoothGattServer), new Callback<Boolean>() {
                             @Override
                             public void accept(Boolean value) {
                                 advertiseCallback = null;
-                                bluetoothGattServer = null;
+                                if (!persistentGattServer) {
+                                    bluetoothGattServer = null;
+                                }
                                 state(now, AdvertLoopState.stopped);
                             }
                         });
@@ -223,11 +236,18 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
 
     // MARK:- Start and stop advert
 
-    private void startAdvert(final BluetoothLeAdvertiser bluetoothLeAdvertiser, final Callback<Triple<Boolean, AdvertiseCallback, BluetoothGattServer>> callback) {
-        logger.debug("startAdvert");
+    /// Start advert with new GATT server, or existing persistent GATT server if not null.
+    private void startAdvert(final BluetoothLeAdvertiser bluetoothLeAdvertiser, final BluetoothGattServer persistentGattServer, final Callback<Triple<Boolean, AdvertiseCallback, BluetoothGattServer>> callback) {
+        logger.debug("startAdvert (persistentGattServer={})", (persistentGattServer != null));
         operationQueue.execute(new Runnable() {
             @Override
             public void run() {
+                if (persistentGattServer != null) {
+                    // Reuse persistent GATT server and its services, only the advert is restarted
+                    bluetoothGattServer = persistentGattServer;
+                    advertise(persistentGattServer);
+                    return;
+                }
                 boolean result = true;
                 // Stop existing advert if there is already a proxy reference.
                 // This should never happen because only the AdvertLoopTask calls
@@ -237,6 +257,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                 if (bluetoothGattServer != null) {
                     logger.fault("startAdvert found existing GATT server");
                     try {
+                        gattServerMetrics.stopped(System.currentTimeMillis());
                         bluetoothGattServer.clearServices();
                         bluetoothGattServer.close();
                     } catch (Throwable e) {
@@ -246,7 +267,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                 }
                 // Start new GATT server
                 try {
-                    bluetoothGattServer = startGattServer(logger, context, payloadDataSupplier, database);
+                    bluetoothGattServer = startGattServer(logger, context, payloadDataSupplier, payloadDataCache, gattServerMetrics, database);
                 } catch (Throwable e) {
                     logger.fault("startAdvert failed to start GATT server", e);
                     result = false;
@@ -256,9 +277,11 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                 } else {
                     try {
                         setGattService(logger, context, bluetoothGattServer);
+                        gattServerMetrics.started(System.currentTimeMillis());
                     } catch (Throwable e) {
                         logger.fault("startAdvert failed to set GATT service", e);
                         try {
+                            gattServerMetrics.stopped(System.currentTimeMillis());
                             bluetoothGattServer.clearServices();
                             bluetoothGattServer.close();
                             bluetoothGattServer = null;
@@ -274,8 +297,11 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                     callback.accept(new Triple<Boolean, AdvertiseCallback, BluetoothGattServer>(false, null, null));
                     return;
                 }
+                advertise(bluetoothGattServer);
+            }
+
+            private void advertise(final BluetoothGattServer bluetoothGattServerConfirmed) {
                 try {
-                    final BluetoothGattServer bluetoothGattServerConfirmed = bluetoothGattServer;
                     final AdvertiseCallback advertiseCallback = new AdvertiseCallback() {
                         @Override
                         public void onStartSuccess(AdvertiseSettings settingsInEffect) {
@@ -292,7 +318,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                     startAdvertising(bluetoothLeAdvertiser, advertiseCallback);
                 } catch (Throwable e) {
                     logger.fault("startAdvert failed");
-                    callback.accept(new Triple<Boolean, AdvertiseCallback, BluetoothGattServer>(false, null, null));
+                    callback.accept(new Triple<Boolean, AdvertiseCallback, BluetoothGattServer>(false, null, bluetoothGattServerConfirmed));
                 }
             }
         });
@@ -314,6 +340,11 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                 }
                 try {
                     if (bluetoothGattServer != null) {
+                        gattServerMetrics.stopped(System.currentTimeMillis());
+                        // Release reference held by startAdvert to the GATT server being stopped
+                        if (bluetoothGattServer == ConcreteBLETransmitter.this.bluetoothGattServer) {
+                            ConcreteBLETransmitter.this.bluetoothGattServer = null;
+                        }
                         bluetoothGattServer.clearServices();
                         bluetoothGattServer.close();
                     }
@@ -334,7 +365,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
 
     @Override
     public PayloadData payloadData() {
-        return payloadDataSupplier.payload(new PayloadTimestamp(new Date()), null);
+        return payloadDataCache.payloadData(System.currentTimeMillis());
     }
 
     @Override
@@ -342,6 +373,11 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
         return bluetoothLeAdvertiser() != null;
     }
 
+    @Override
+    public BLEGattServerMetrics gattServerMetrics() {
+        return gattServerMetrics;
+    }
+
     @Override
     public void bluetoothStateManager(BluetoothState didUpdateState) {
         logger.debug("didUpdateState (state={},transmitterEnabled={})", didUpdateState, transmitterEnabled.get());
@@ -367,7 +403,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
         logger.debug("startAdvertising successful (pseudoDeviceAddress={},settings={})", pseudoDeviceAddress, settings);
     }
 
-    private static BluetoothGattServer startGattServer(final SensorLogger logger, final Context context, final PayloadDataSupplier payloadDataSupplier, final BLEDatabase database) {
+    private static BluetoothGattServer startGattServer(final SensorLogger logger, final Context context, final PayloadDataSupplier payloadDataSupplier, final BLEPayloadDataCache payloadDataCache, final BLEGattServerMetrics gattServerMetrics, final BLEDatabase database) {
         logger.debug("startGattServer");
         final BluetoothManager bluetoothManager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
         if (bluetoothManager == null) {
@@ -377,47 +413,12 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
         // Data = rssi (4 bytes int) + payload (remaining bytes)
         final AtomicReference<BluetoothGattServer> server = new AtomicReference<>(null);
         final BluetoothGattServerCallback callback = new BluetoothGattServerCallback() {
-            private final Map<String, PayloadData> onCharacteristicReadPayloadData = new ConcurrentHashMap<>();
-            private final Map<String, byte[]> onCharacteristicWriteSignalData = new ConcurrentHashMap<>();
-
-            private PayloadData onCharacteristicReadPayloadData(BluetoothDevice bluetoothDevice) {
-                final BLEDevice device = database.device(bluetoothDevice);
-                final String key = bluetoothDevice.getAddress();
-                if (onCharacteristicReadPayloadData.containsKey(key)) {
-                    return onCharacteristicReadPayloadData.get(key);
-                }
-                final PayloadData payloadData = payloadDataSupplier.payload(new PayloadTimestamp(), device);
-                onCharacteristicReadPayloadData.put(key, payloadData);
-                return payloadData;
-            }
-
-            private byte[] onCharacteristicWriteSignalData(BluetoothDevice device, byte[] value) {
-                final String key = device.getAddress();
-                byte[] partialData = onCharacteristicWriteSignalData.get(key);
-                if (partialData == null) {
-                    partialData = new byte[0];
-                }
-                byte[] data = new byte[partialData.length + (value == null ? 0 : value.length)];
-                System.arraycopy(partialData, 0, data, 0, partialData.length);
-                if (value != null) {
-                    System.arraycopy(value, 0, data, partialData.length, value.length);
-                }
-                onCharacteristicWriteSignalData.put(key, data);
-                return data;
-            }
+            private final BLEWriteReassembly onCharacteristicWriteSignalData = new BLEWriteReassembly();
 
             private void removeData(BluetoothDevice device) {
                 final String deviceAddress = device.getAddress();
-                for (String deviceRequestId : new ArrayList<>(onCharacteristicReadPayloadData.keySet())) {
-                    if (deviceRequestId.startsWith(deviceAddress)) {
-                        onCharacteristicReadPayloadData.remove(deviceRequestId);
-                    }
-                }
-                for (String deviceRequestId : new ArrayList<>(onCharacteristicWriteSignalData.keySet())) {
-                    if (deviceRequestId.startsWith(deviceAddress)) {
-                        onCharacteristicWriteSignalData.remove(deviceRequestId);
-                    }
-                }
+                payloadDataCache.remove(deviceAddress);
+                onCharacteristicWriteSignalData.remove(deviceAddress);
             }
 
             @Override
@@ -436,7 +437,6 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
             @Override
             public void onCharacteristicWriteRequest(BluetoothDevice device, int requestId, BluetoothGattCharacteristic characteristic, boolean preparedWrite, boolean responseNeeded, int offset, byte[] value) {
                 final BLEDevice targetDevice = database.device(device);
-                final TargetIdentifier targetIdentifier = targetDevice.identifier;
                 logger.debug("didReceiveWrite (central={},requestId={},offset={},characteristic={},value={})",
                         targetDevice, requestId, offset,
                         (characteristic.getUuid().equals(BLESensorConfiguration.androidSignalCharacteristicUUID) ? "signal" : "unknown"),
@@ -448,7 +448,19 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                     }
                     return;
                 }
-                final Data data = new Data(onCharacteristicWriteSignalData(device, value));
+                // Reassemble fragments into complete data bundles
+                final List<byte[]> bundles = onCharacteristicWriteSignalData.append(device.getAddress(), value, System.currentTimeMillis());
+                for (final byte[] bundle : bundles) {
+                    didReceiveWrite(characteristic, targetDevice, new Data(bundle));
+                }
+                if (responseNeeded) {
+                    server.get().sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
+                }
+            }
+
+            /// Process complete data bundle written by central
+            private void didReceiveWrite(final BluetoothGattCharacteristic characteristic, final BLEDevice targetDevice, final Data data) {
+                final TargetIdentifier targetIdentifier = targetDevice.identifier;
 				if (characteristic.getUuid().equals(BLESensorConfiguration.interopOpenTracePayloadCharacteristicUUID)) {
 				    if (null == data.value) {
 				        return;
@@ -456,10 +468,6 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                     final PayloadData payloadData = new PayloadData(data.value);
                     logger.debug("didReceiveWrite (dataType=payload,central={},payload={})", targetDevice, payloadData);
                     targetDevice.payloadData(payloadData);
-                    onCharacteristicWriteSignalData.remove(device.getAddress());
-                    if (responseNeeded) {
-                        server.get().sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
-                    }
                     return;
                 }
                 switch (SignalCharacteristicData.detect(data)) {
@@ -479,7 +487,7 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                     case payload: {
                         final PayloadData payloadData = SignalCharacteristicData.decodeWritePayload(data);
                         if (payloadData == null) {
-                            // Fragmented payload data may be incomplete
+                            logger.fault("didReceiveWrite, invalid request (central={},action=writePayload)", targetDevice);
                             break;
                         }
                         logger.debug("didReceiveWrite (dataType=payload,central={},payload={})", targetDevice, payloadData);
@@ -487,13 +495,12 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                         targetDevice.operatingSystem(BLEDeviceOperatingSystem.android);
                         targetDevice.receiveOnly(true);
                         targetDevice.payloadData(payloadData);
-                        onCharacteristicWriteSignalData.remove(device.getAddress());
                         break;
                     }
                     case payloadSharing: {
                         final PayloadSharingData payloadSharingData = SignalCharacteristicData.decodeWritePayloadSharing(data);
                         if (payloadSharingData == null) {
-                            // Fragmented payload sharing data may be incomplete
+                            logger.fault("didReceiveWrite, invalid request (central={},action=writePayloadSharing)", targetDevice);
                             break;
                         }
                         final List<PayloadData> didSharePayloadData = payloadDataSupplier.payload(payloadSharingData.data);
@@ -512,9 +519,10 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                         break;
                     }
                     case immediateSend: {
+                        // Coalesced immediate send data bundles are separated by reassembly
                         final ImmediateSendData immediateSendData = SignalCharacteristicData.decodeImmediateSend(data);
                         if (immediateSendData == null) {
-                            // Fragmented immediate send data may be incomplete
+                            logger.fault("didReceiveWrite, invalid request (central={},action=immediateSend)", targetDevice);
                             break;
                         }
                         for (SensorDelegate delegate : delegates) {
@@ -524,22 +532,21 @@ public class ConcreteBLETransmitter implements BLETransmitter, BluetoothStateMan
                         break;
                     }
                 }
-                if (responseNeeded) {
-                    server.get().sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
-                }
             }
 
             @Override
             public void onCharacteristicReadRequest(BluetoothDevice device, int requestId, int offset, BluetoothGattCharacteristic characteristic) {
                 final BLEDevice targetDevice = database.device(device);
                 if (characteristic.getUuid() == BLESensorConfiguration.payloadCharacteristicUUID || characteristic.getUuid().equals(BLESensorConfiguration.interopOpenTracePayloadCharacteristicUUID)) {
-                    final PayloadData payloadData = onCharacteristicReadPayloadData(device);
-                    if (offset > payloadData.value.length) {
-                        logger.fault("didReceiveRead, invalid offset (central={},requestId={},offset={},characteristic=payload,dataLength={})", targetDevice, requestId, offset, payloadData.value.length);
+                    // Response is a precomputed slice of the payload from offset
+                    final byte[] value = payloadDataCache.read(device.getAddress(), offset, System.currentTimeMillis());
+                    if (value == null) {
+                        logger.fault("didReceiveRead, invalid offset (central={},requestId={},offset={},characteristic=payload)", targetDevice, requestId, offset);
                         server.get().sendResponse(device, requestId, BluetoothGatt.GATT_INVALID_OFFSET, offset, null);
+                    } else if (!server.get().sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value)) {
+                        gattServerMetrics.readFailed();
+                        logger.fault("didReceiveRead, failed to send response (central={},requestId={},offset={},characteristic=payload)", targetDevice, requestId, offset);
                     } else {
-                        final byte[] value = Arrays.copyOfRange(payloadData.value, offset, payloadData.value.length);
-                        server.get().sendResponse(device, requestId, BluetoothGatt.GATT_SUCCESS, offset, value);
                         logger.debug("didReceiveRead (central={},requestId={},offset={},characteristic=payload)", targetDevice, requestId, offset);
                     }
                 } else {
@@ -0,0 +1,210 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble.filter;
+
+import com.vmware.herald.sensor.ble.BLESensorConfiguration;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/// Classification of a scan record, established by a single pass over the raw scan record bytes.
+/// This replaces separate service UUID and manufacturer data lookups on the scan record for
+/// identifying sensor and OpenTrace services, Apple devices, pseudo device address and TX power.
+/// Instances are reusable, classify() resets and fills in the result without allocating memory,
+/// thus an instance can be reused for processing a stream of scan records on the same thread.
+public class BLEAdvertClassification {
+    /// Maximum number of manufacturer data segments recorded for message extraction
+    public final static int manufacturerDataCapacity = 8;
+    /// Base UUID for 16-bit and 32-bit service UUIDs
+    private final static long baseUUIDLeastSignificantBits = 0x800000805F9B34FBL;
+    private final static long baseUUIDMostSignificantBits = 0x1000L;
+    private byte[] raw = null;
+    private boolean hasSensorService = false;
+    private boolean hasOpenTraceService = false;
+    private boolean isAppleDevice = false;
+    private boolean hasOpenTraceManufacturerData = false;
+    private int pseudoDeviceAddressOffset = -1;
+    private int pseudoDeviceAddressLength = 0;
+    private int txPower = Integer.MIN_VALUE;
+    private int manufacturerDataCount = 0;
+    private final int[] manufacturerDataId = new int[manufacturerDataCapacity];
+    private final int[] manufacturerDataOffset = new int[manufacturerDataCapacity];
+    private final int[] manufacturerDataLength = new int[manufacturerDataCapacity];
+
+    /// Classify raw scan record data, returns this instance for convenience.
+    public BLEAdvertClassification classify(final byte[] raw) {
+        reset(raw);
+        if (raw == null) {
+            return this;
+        }
+        final UUID sensorServiceUUID = BLESensorConfiguration.serviceUUID;
+        final UUID openTraceServiceUUID = (BLESensorConfiguration.interopOpenTraceEnabled ? BLESensorConfiguration.interopOpenTraceServiceUUID : null);
+        // Offset and length of last manufacturer data for sensor and OpenTrace, as
+        // ScanRecord.getManufacturerSpecificData() returns the last one for each ID
+        int sensorOffset = -1, sensorLength = 0, openTraceOffset = -1, openTraceLength = 0;
+        int position = 0;
+        while (position + 2 <= raw.length) {
+            final int segmentLength = raw[position] & 0xff;
+            if (segmentLength == 0) {
+                break;
+            }
+            final int segmentType = raw[position + 1] & 0xff;
+            final int dataOffset = position + 2;
+            final int dataLength = segmentLength - 1;
+            if (dataOffset + dataLength > raw.length) {
+                break;
+            }
+            switch (segmentType) {
+                case 0x02: // serviceUUID16IncompleteList
+                case 0x03: // serviceUUID16CompleteList
+                    for (int i = dataOffset; i + 2 <= dataOffset + dataLength; i += 2) {
+                        final long uuid16 = ((raw[i + 1] & 0xffL) << 8) | (raw[i] & 0xffL);
+                        matchServiceUUID((uuid16 << 32) | baseUUIDMostSignificantBits, baseUUIDLeastSignificantBits, sensorServiceUUID, openTraceServiceUUID);
+                    }
+                    break;
+                case 0x04: // serviceUUID32IncompleteList
+                case 0x05: // serviceUUID32CompleteList
+                    for (int i = dataOffset; i + 4 <= dataOffset + dataLength; i += 4) {
+                        final long uuid32 = littleEndian(raw, i, 4);
+                        matchServiceUUID((uuid32 << 32) | baseUUIDMostSignificantBits, baseUUIDLeastSignificantBits, sensorServiceUUID, openTraceServiceUUID);
+                    }
+                    break;
+                case 0x06: // serviceUUID128IncompleteList
+                case 0x07: // serviceUUID128CompleteList
+                    for (int i = dataOffset; i + 16 <= dataOffset + dataLength; i += 16) {
+                        matchServiceUUID(littleEndian(raw, i + 8, 8), littleEndian(raw, i, 8), sensorServiceUUID, openTraceServiceUUID);
+                    }
+                    break;
+                case 0x0A: // txPowerLevel
+                    if (dataLength >= 1) {
+                        txPower = raw[dataOffset];
+                    }
+                    break;
+                case 0xFF: // manufacturerData
+                    if (dataLength < 2) {
+                        break;
+                    }
+                    final int manufacturerId = ((raw[dataOffset + 1] & 0xff) << 8) | (raw[dataOffset] & 0xff);
+                    if (manufacturerDataCount < manufacturerDataCapacity) {
+                        manufacturerDataId[manufacturerDataCount] = manufacturerId;
+                        manufacturerDataOffset[manufacturerDataCount] = dataOffset + 2;
+                        manufacturerDataLength[manufacturerDataCount] = dataLength - 2;
+                        manufacturerDataCount++;
+                    }
+                    if (manufacturerId == BLESensorConfiguration.manufacturerIdForApple) {
+                        isAppleDevice = true;
+                    }
+                    if (manufacturerId == BLESensorConfiguration.manufacturerIdForSensor) {
+                        sensorOffset = dataOffset + 2;
+                        sensorLength = dataLength - 2;
+                    }
+                    if (manufacturerId == BLESensorConfiguration.interopOpenTraceManufacturerId) {
+                        openTraceOffset = dataOffset + 2;
+                        openTraceLength = dataLength - 2;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            position = dataOffset + dataLength;
+        }
+        // HERALD pseudo device address
+        if (sensorOffset >= 0) {
+            if (sensorLength == 6) {
+                pseudoDeviceAddressOffset = sensorOffset;
+                pseudoDeviceAddressLength = sensorLength;
+            }
+        }
+        // OpenTrace device id
+        else if (BLESensorConfiguration.interopOpenTraceEnabled && openTraceOffset >= 0 && openTraceLength > 0) {
+            pseudoDeviceAddressOffset = openTraceOffset;
+            pseudoDeviceAddressLength = openTraceLength;
+        }
+        hasOpenTraceManufacturerData = (BLESensorConfiguration.interopOpenTraceEnabled && openTraceOffset >= 0);
+        return this;
+    }
+
+    private void reset(final byte[] raw) {
+        this.raw = raw;
+        hasSensorService = false;
+        hasOpenTraceService = false;
+        isAppleDevice = false;
+        hasOpenTraceManufacturerData = false;
+        pseudoDeviceAddressOffset = -1;
+        pseudoDeviceAddressLength = 0;
+        txPower = Integer.MIN_VALUE;
+        manufacturerDataCount = 0;
+    }
+
+    private void matchServiceUUID(final long mostSignificantBits, final long leastSignificantBits, final UUID sensorServiceUUID, final UUID openTraceServiceUUID) {
+        if (sensorServiceUUID != null && sensorServiceUUID.getMostSignificantBits() == mostSignificantBits && sensorServiceUUID.getLeastSignificantBits() == leastSignificantBits) {
+            hasSensorService = true;
+        }
+        if (openTraceServiceUUID != null && openTraceServiceUUID.getMostSignificantBits() == mostSignificantBits && openTraceServiceUUID.getLeastSignificantBits() == leastSignificantBits) {
+            hasOpenTraceService = true;
+        }
+    }
+
+    /// Decode little endian unsigned integer of 1 to 8 bytes.
+    private static long littleEndian(final byte[] raw, final int offset, final int length) {
+        long value = 0;
+        for (int i = offset + length; i-- > offset; ) {
+            value = (value << 8) | (raw[i] & 0xffL);
+        }
+        return value;
+    }
+
+    // MARK:- Classification result
+
+    /// Does scan record include advert for sensor service?
+    public boolean hasSensorService() {
+        return hasSensorService;
+    }
+
+    /// Does scan record include advert for OpenTrace service? Always false if OpenTrace interop is disabled.
+    public boolean hasOpenTraceService() {
+        return hasOpenTraceService;
+    }
+
+    /// Does scan record indicate device was manufactured by Apple?
+    public boolean isAppleDevice() {
+        return isAppleDevice;
+    }
+
+    /// Does scan record indicate device is OpenTrace Android (true) or iOS (false) device?
+    /// Always false if OpenTrace interop is disabled.
+    public boolean isOpenTraceAndroidDevice() {
+        return hasOpenTraceManufacturerData;
+    }
+
+    /// Pseudo device address of Android devices from HERALD or OpenTrace manufacturer data, or null if not found.
+    public PseudoDeviceAddress pseudoDeviceAddress() {
+        if (pseudoDeviceAddressOffset < 0) {
+            return null;
+        }
+        return new PseudoDeviceAddress(Arrays.copyOfRange(raw, pseudoDeviceAddressOffset, pseudoDeviceAddressOffset + pseudoDeviceAddressLength));
+    }
+
+    /// TX power level, or Integer.MIN_VALUE if not found.
+    public int txPower() {
+        return txPower;
+    }
+
+    /// Number of manufacturer data segments, up to manufacturerDataCapacity.
+    public int manufacturerDataCount() {
+        return manufacturerDataCount;
+    }
+
+    /// Manufacturer data at index, excluding manufacturer ID.
+    public BLEAdvertManufacturerData manufacturerData(final int index) {
+        final int offset = manufacturerDataOffset[index];
+        final int length = manufacturerDataLength[index];
+        return new BLEAdvertManufacturerData(manufacturerDataId[index],
+                Arrays.copyOfRange(raw, offset, offset + length),
+                new Data(Arrays.copyOfRange(raw, offset - 4, offset + length)));
+    }
+}
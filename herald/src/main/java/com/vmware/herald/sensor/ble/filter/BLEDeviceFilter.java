@@ -160,6 +160,29 @@ public class BLEDeviceFilter {
         return messages;
     }
 
+    /// Extract messages from manufacturer specific data of classified scan record, without parsing the scan record again
+    protected final static List<Data> extractMessages(final BLEAdvertClassification classification) {
+        if (classification == null || classification.manufacturerDataCount() == 0) {
+            return null;
+        }
+        final List<BLEAdvertManufacturerData> bleAdvertManufacturerDataList = new ArrayList<>(classification.manufacturerDataCount());
+        for (int i = 0; i < classification.manufacturerDataCount(); i++) {
+            bleAdvertManufacturerDataList.add(classification.manufacturerData(i));
+        }
+        final List<BLEAdvertAppleManufacturerSegment> bleAdvertAppleManufacturerSegments = BLEAdvertParser.extractAppleManufacturerSegments(bleAdvertManufacturerDataList);
+        // Convert segments to messages
+        if (bleAdvertAppleManufacturerSegments == null || bleAdvertAppleManufacturerSegments.isEmpty()) {
+            return null;
+        }
+        final List<Data> messages = new ArrayList<>(bleAdvertAppleManufacturerSegments.size());
+        for (BLEAdvertAppleManufacturerSegment segment : bleAdvertAppleManufacturerSegments) {
+            if (segment != null && segment.raw != null && segment.raw.value.length > 0) {
+                messages.add(segment.raw);
+            }
+        }
+        return messages;
+    }
+
     // MARK:- Filtering functions
 
     /// Extract feature data from scan record
@@ -251,7 +274,11 @@ public class BLEDeviceFilter {
             return null;
         }
         // Extract messages
-        final List<Data> messages = extractMessages(rawData.value);
+        return match(patternList, extractMessages(rawData.value));
+    }
+
+    /// Match filter patterns against messages, returning the first match
+    private static MatchingPattern match(final List<FilterPattern> patternList, final List<Data> messages) {
         if (messages == null || messages.isEmpty()) {
             return null;
         }
@@ -272,6 +299,24 @@ public class BLEDeviceFilter {
         return null;
     }
 
+    /// Match classified scan record messages against all registered patterns, returns matching pattern or null.
+    /// Classification must be of the current scan record of the device.
+    public MatchingPattern match(final BLEDevice device, final BLEAdvertClassification classification) {
+        if (classification == null) {
+            return match(device);
+        }
+        // No pattern to match against
+        if (filterPatterns == null || filterPatterns.isEmpty()) {
+            return null;
+        }
+        try {
+            return match(filterPatterns, extractMessages(classification));
+        } catch (Throwable e) {
+            logger.fault("match, unknown error (device={},scanRecord={})", device, device.scanRecord());
+            return null;
+        }
+    }
+
     /// Match scan record messages against all registered patterns, returns matching pattern or null.
     public MatchingPattern match(final BLEDevice device) {
         try {
@@ -0,0 +1,10 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.datatype;
+
+/// Generic predicate function
+public interface Predicate<T> {
+    boolean test(T value);
+}
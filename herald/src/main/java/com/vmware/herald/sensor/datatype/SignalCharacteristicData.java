@@ -177,6 +177,36 @@ public class SignalCharacteristicData {
         return new ImmediateSendData(immediateSendDataBytes);
     }
 
+    /// Length of signal characteristic data bundle in bytes, as declared by the header at offset,
+    /// for reassembling fragmented writes where length bytes are available from offset. Returns -1
+    /// if the header is incomplete, or 0 if the length is unknown, e.g. unknown action code.
+    public static int bundleLength(final byte[] data, final int offset, final int length) {
+        if (data == null || length <= 0) {
+            return -1;
+        }
+        switch (data[offset]) {
+            case BLESensorConfiguration.signalCharacteristicActionWriteRSSI:
+                return 3;
+            case BLESensorConfiguration.signalCharacteristicActionWritePayload:
+            case BLESensorConfiguration.signalCharacteristicActionWriteImmediate: {
+                if (length < 3) {
+                    return -1;
+                }
+                final short count = (short) ((data[offset + 1] & 0xFF) | (data[offset + 2] << 8));
+                return (count < 0 ? 0 : 3 + count);
+            }
+            case BLESensorConfiguration.signalCharacteristicActionWritePayloadSharing: {
+                if (length < 5) {
+                    return -1;
+                }
+                final short count = (short) ((data[offset + 3] & 0xFF) | (data[offset + 4] << 8));
+                return (count < 0 ? 0 : 5 + count);
+            }
+            default:
+                return 0;
+        }
+    }
+
     /// Detect signal characteristic data bundle type
     public static SignalCharacteristicDataType detect(Data data) {
         switch (signalDataActionCode(data.value)) {
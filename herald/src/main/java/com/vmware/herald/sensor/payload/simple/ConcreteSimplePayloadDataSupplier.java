@@ -24,7 +24,7 @@ public class ConcreteSimplePayloadDataSupplier extends DefaultPayloadDataSupplie
     private final SensorLogger logger = new ConcreteSensorLogger("Sensor", "Payload.SimplePayloadDataSupplier");
     public final static int payloadLength = 21;
     private final Data commonPayload = new Data();
-    private final MatchingKey[] matchingKeys;
+    private final MatchingKeyChain matchingKeys;
     // Cache contact identifiers for the day
     private Integer day = null;
     private ContactIdentifier[] contactIdentifiers = null;
@@ -36,8 +36,8 @@ public class ConcreteSimplePayloadDataSupplier extends DefaultPayloadDataSupplie
         commonPayload.append(countryCode);
         commonPayload.append(stateCode);
 
-        // Generate matching keys from secret key
-        matchingKeys = K.matchingKeys(secretKey);
+        // Derive matching keys from secret key on demand
+        matchingKeys = new MatchingKeyChain(secretKey);
     }
 
     /// Generate a new secret key
@@ -60,14 +60,14 @@ public class ConcreteSimplePayloadDataSupplier extends DefaultPayloadDataSupplie
         final int day = K.day(time);
         final int period = K.period(time);
 
-        if (!(day >= 0 && day < matchingKeys.length)) {
+        if (!(day >= 0 && day < matchingKeys.size())) {
             logger.fault("Contact identifier out of day range (time={},day={})", time, day);
             return null;
         }
 
         // Generate and cache contact keys for specific day on-demand
         if (this.day == null || this.day != day) {
-            contactIdentifiers = contactIdentifiers(matchingKeys[day]);
+            contactIdentifiers = contactIdentifiers(matchingKeys.matchingKey(day));
             this.day = day;
         }
 
@@ -17,7 +17,7 @@ public class K {
     /// Secret key length
     private final static int secretKeyLength = 2048;
     /// Days supported by key derivation function
-    private final static int days = 2000;
+    protected final static int days = 2000;
     /// Periods per day
     private final static int periods = 240;
     /// Epoch as time interval since 1970
@@ -0,0 +1,80 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.payload.simple;
+
+/// Matching keys K_{m}^{0...days} derived on demand from the reversed hash chain of matching key
+/// seeds, as an alternative to generating and retaining all matching keys with K.matchingKeys().
+/// Seeds are retained at checkpoints every ceil(sqrt(days + 1)) days, such that the matching key
+/// for any day is derived in O(sqrt(days)) hashes from the nearest checkpoint on or after that day.
+/// Checkpoints are established on first use, and the matching key for the last requested day is
+/// cached. Matching keys are identical to those generated by K.matchingKeys().
+public class MatchingKeyChain {
+    private final SecretKey secretKey;
+    private final int days;
+    private final int interval;
+    /// Matching key seed for day (days - i * interval) at index i
+    private MatchingKeySeed[] checkpoints = null;
+    private int day = -1;
+    private MatchingKey matchingKey = null;
+
+    public MatchingKeyChain(SecretKey secretKey) {
+        this(secretKey, K.days);
+    }
+
+    protected MatchingKeyChain(SecretKey secretKey, int days) {
+        this.secretKey = secretKey;
+        this.days = days;
+        this.interval = Math.max(1, (int) Math.ceil(Math.sqrt(days + 1)));
+    }
+
+    /// Number of matching keys, for days 0...days
+    public int size() {
+        return days + 1;
+    }
+
+    /// Matching key for day, or null if day is out of range
+    public synchronized MatchingKey matchingKey(int day) {
+        if (!(day >= 0 && day <= days)) {
+            return null;
+        }
+        if (matchingKey != null && this.day == day) {
+            return matchingKey;
+        }
+        if (checkpoints == null) {
+            checkpoints = checkpoints();
+        }
+        // Derive seeds for day and day - 1 from nearest checkpoint on or after day
+        final int checkpoint = (days - day) / interval;
+        MatchingKeySeed matchingKeySeed = checkpoints[checkpoint];
+        for (int i=days - checkpoint * interval; i-->day;) {
+            matchingKeySeed = previous(matchingKeySeed);
+        }
+        // Matching key on day 0 is derived from the matching key seed on day -1, which follows the same chain
+        final MatchingKeySeed matchingKeySeedMinusOne = previous(matchingKeySeed);
+        matchingKey = new MatchingKey(F.h(F.xor(matchingKeySeed, matchingKeySeedMinusOne)));
+        this.day = day;
+        return matchingKey;
+    }
+
+    /// Matching key seeds at checkpoints, from last day backwards
+    private MatchingKeySeed[] checkpoints() {
+        final MatchingKeySeed[] checkpoints = new MatchingKeySeed[days / interval + 1];
+        MatchingKeySeed matchingKeySeed = new MatchingKeySeed(F.h(secretKey));
+        for (int i=days; i>=0; i--) {
+            if ((days - i) % interval == 0) {
+                checkpoints[(days - i) / interval] = matchingKeySeed;
+            }
+            if (i > 0) {
+                matchingKeySeed = previous(matchingKeySeed);
+            }
+        }
+        return checkpoints;
+    }
+
+    /// Matching key seed for previous day
+    private static MatchingKeySeed previous(MatchingKeySeed matchingKeySeed) {
+        return new MatchingKeySeed(F.h(F.t(matchingKeySeed)));
+    }
+}
@@ -0,0 +1,150 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Int32;
+import com.vmware.herald.sensor.datatype.PayloadData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BLEConnectionPriorityTests {
+    private enum Task {
+        readPayload, writeRSSI
+    }
+
+    /// Simulated device task outcomes
+    private final static long unknownCostMillis = 4000, androidCostMillis = 1000, iosCostMillis = 300;
+
+    private final static BLEConnectionPriority.Valuation<Task> valuation = new BLEConnectionPriority.Valuation<Task>() {
+        @Override
+        public Task task(BLEDevice device) {
+            if (device.operatingSystem() == BLEDeviceOperatingSystem.ignore) {
+                return null;
+            }
+            return (device.operatingSystem() == BLEDeviceOperatingSystem.ios ? Task.writeRSSI : Task.readPayload);
+        }
+
+        @Override
+        public double value(BLEDevice device, Task task) {
+            if (task == Task.readPayload) {
+                return (device.operatingSystem() == BLEDeviceOperatingSystem.ios_tbc ? 2 : 5);
+            }
+            return 1;
+        }
+    };
+
+    private static BLEDevice device(final ConcreteBLEDatabase database, final int i, final BLEDeviceOperatingSystem operatingSystem) {
+        final PayloadData payloadData = new PayloadData();
+        payloadData.append(new Int32(i));
+        final BLEDevice device = database.device(payloadData);
+        device.operatingSystem(operatingSystem);
+        return device;
+    }
+
+    @Test
+    public void testOrder() {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice unknown1 = device(database, 1, BLEDeviceOperatingSystem.ios_tbc);
+        final BLEDevice ignore = device(database, 2, BLEDeviceOperatingSystem.ignore);
+        final BLEDevice ios = device(database, 3, BLEDeviceOperatingSystem.ios);
+        final BLEDevice android = device(database, 4, BLEDeviceOperatingSystem.android);
+        final BLEDevice unknown2 = device(database, 5, BLEDeviceOperatingSystem.ios_tbc);
+        final BLEConnectionPriority<Task> priority = new BLEConnectionPriority<>(1000);
+        // Without statistics, order by value, equal value in original order, no task excluded
+        assertEquals(Arrays.asList(android, unknown1, unknown2, ios), priority.order(Arrays.asList(unknown1, ignore, ios, android, unknown2), valuation));
+        // With statistics, order by value per unit cost
+        priority.add(BLEDeviceOperatingSystem.ios_tbc, Task.readPayload, unknownCostMillis);
+        priority.add(BLEDeviceOperatingSystem.android, Task.readPayload, androidCostMillis);
+        priority.add(BLEDeviceOperatingSystem.ios, Task.writeRSSI, iosCostMillis);
+        assertEquals(Arrays.asList(android, ios, unknown1, unknown2), priority.order(Arrays.asList(unknown1, ignore, ios, android, unknown2), valuation));
+    }
+
+    @Test
+    public void testExpectedCost() {
+        final BLEConnectionPriority<Task> priority = new BLEConnectionPriority<>(1000);
+        assertEquals(1000, priority.expectedCost(BLEDeviceOperatingSystem.android, Task.readPayload), Double.MIN_VALUE);
+        priority.add(BLEDeviceOperatingSystem.android, Task.readPayload, 200);
+        priority.add(BLEDeviceOperatingSystem.android, Task.readPayload, 400);
+        assertEquals(300, priority.expectedCost(BLEDeviceOperatingSystem.android, Task.readPayload), Double.MIN_VALUE);
+        // Statistics are per operating system and task
+        assertEquals(1000, priority.expectedCost(BLEDeviceOperatingSystem.ios, Task.readPayload), Double.MIN_VALUE);
+        assertEquals(1000, priority.expectedCost(BLEDeviceOperatingSystem.android, Task.writeRSSI), Double.MIN_VALUE);
+    }
+
+    /// Simulate one scan processing cycle, connecting to devices in order to perform the next task
+    /// selected by the receiver, returns number of payloads acquired within time limit.
+    private static int payloadsAcquired(final ConcreteBLEReceiver receiver, final List<BLEDevice> devices, final long timeLimitMillis) {
+        long elapsed = 0;
+        int payloads = 0;
+        int unknown = 0;
+        for (final BLEDevice device : devices) {
+            final ConcreteBLEReceiver.NextTask nextTask = receiver.nextTaskForDevice(device);
+            if (nextTask == ConcreteBLEReceiver.NextTask.nothing) {
+                continue;
+            }
+            switch (device.operatingSystem()) {
+                case ios_tbc:
+                    elapsed += unknownCostMillis;
+                    // Only 1 in 5 unknown Apple devices is offering the sensor service
+                    if (elapsed <= timeLimitMillis && nextTask == ConcreteBLEReceiver.NextTask.readPayload && unknown++ % 5 == 0) {
+                        payloads++;
+                    }
+                    break;
+                case android:
+                    elapsed += androidCostMillis;
+                    if (elapsed <= timeLimitMillis && nextTask == ConcreteBLEReceiver.NextTask.readPayload) {
+                        payloads++;
+                    }
+                    break;
+                default:
+                    elapsed += iosCostMillis;
+                    break;
+            }
+            if (elapsed >= timeLimitMillis) {
+                break;
+            }
+        }
+        return payloads;
+    }
+
+    @Test
+    public void testPayloadsAcquiredPerCycle() {
+        // Receiver on device that cannot transmit, thus writes payload to iOS devices
+        final ConcreteBLEReceiver receiver = BLEReceiverSimulation.receiver(new ConcreteBLEDatabase(), false);
+        // Scan arrival order, unknown Apple devices first, then Android devices without payload
+        // interleaved with iOS devices with payload
+        final List<BLEDevice> discovered = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            discovered.add(new BLEReceiverSimulation.Device(BLEDeviceOperatingSystem.ios_tbc));
+        }
+        for (int i = 0; i < 20; i++) {
+            discovered.add(new BLEReceiverSimulation.Device(BLEDeviceOperatingSystem.android));
+            final BLEDevice ios = new BLEReceiverSimulation.Device(BLEDeviceOperatingSystem.ios);
+            ios.payloadData(BLEReceiverSimulation.payloadData(i));
+            discovered.add(ios);
+        }
+        assertEquals(ConcreteBLEReceiver.NextTask.readPayload, receiver.nextTaskForDevice(discovered.get(0)));
+        assertEquals(ConcreteBLEReceiver.NextTask.readPayload, receiver.nextTaskForDevice(discovered.get(30)));
+        assertEquals(ConcreteBLEReceiver.NextTask.writePayload, receiver.nextTaskForDevice(discovered.get(31)));
+        // Connection duration statistics from previous cycles
+        for (int i = 0; i < 10; i++) {
+            receiver.registerConnectionDuration(BLEDeviceOperatingSystem.ios_tbc, ConcreteBLEReceiver.NextTask.readPayload, unknownCostMillis);
+            receiver.registerConnectionDuration(BLEDeviceOperatingSystem.android, ConcreteBLEReceiver.NextTask.readPayload, androidCostMillis);
+            receiver.registerConnectionDuration(BLEDeviceOperatingSystem.ios, ConcreteBLEReceiver.NextTask.writePayload, iosCostMillis);
+        }
+        final long timeLimitMillis = 30000;
+        final int payloadsArrivalOrder = payloadsAcquired(receiver, discovered, timeLimitMillis);
+        final int payloadsPriorityOrder = payloadsAcquired(receiver, receiver.prioritise(discovered), timeLimitMillis);
+        System.err.println("payloadsAcquiredPerCycle (arrivalOrder=" + payloadsArrivalOrder + ",priorityOrder=" + payloadsPriorityOrder + ")");
+        assertTrue(payloadsPriorityOrder > payloadsArrivalOrder);
+    }
+}
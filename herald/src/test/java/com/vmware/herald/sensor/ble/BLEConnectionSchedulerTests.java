@@ -0,0 +1,148 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Callback;
+import com.vmware.herald.sensor.datatype.Int32;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.Predicate;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BLEConnectionSchedulerTests {
+    private final static long sessionDurationMillis = 100;
+
+    private static List<BLEDevice> devices(final int count) {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final List<BLEDevice> devices = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final PayloadData payloadData = new PayloadData();
+            payloadData.append(new Int32(i));
+            devices.add(database.device(payloadData));
+        }
+        return devices;
+    }
+
+    /// Simulated GATT session that holds a connection for a fixed duration
+    private final static class SimulatedSession implements Callback<BLEDevice> {
+        private final AtomicInteger concurrent = new AtomicInteger(0);
+        private final AtomicInteger maxConcurrent = new AtomicInteger(0);
+        private final Set<BLEDevice> connected = Collections.synchronizedSet(new HashSet<BLEDevice>());
+
+        @Override
+        public void accept(BLEDevice device) {
+            final int n = concurrent.incrementAndGet();
+            synchronized (maxConcurrent) {
+                maxConcurrent.set(Math.max(maxConcurrent.get(), n));
+            }
+            device.state(BLEDeviceState.connected);
+            try {
+                Thread.sleep(sessionDurationMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            device.state(BLEDeviceState.disconnected);
+            assertTrue(connected.add(device));
+            concurrent.decrementAndGet();
+        }
+    }
+
+    private final static Predicate<BLEDevice> all = new Predicate<BLEDevice>() {
+        @Override
+        public boolean test(BLEDevice device) {
+            return true;
+        }
+    };
+
+    @Test
+    public void testAllDevicesWithinTimeLimit() {
+        final List<BLEDevice> devices = devices(10);
+        final SimulatedSession session = new SimulatedSession();
+        final BLEConnectionScheduler.Result result = new BLEConnectionScheduler(3).connect(devices, all, session, 10000);
+        assertEquals(10, result.devicesProcessed);
+        assertEquals(0, result.devicesSkipped);
+        assertEquals(10, session.connected.size());
+        assertTrue(session.maxConcurrent.get() <= 3);
+    }
+
+    @Test
+    public void testSkipDevicesWithoutPendingTask() {
+        final List<BLEDevice> devices = devices(10);
+        final SimulatedSession session = new SimulatedSession();
+        final BLEConnectionScheduler.Result result = new BLEConnectionScheduler(1).connect(devices, new Predicate<BLEDevice>() {
+            @Override
+            public boolean test(BLEDevice device) {
+                return devices.indexOf(device) % 2 == 0;
+            }
+        }, session, 10000);
+        assertEquals(5, result.devicesProcessed);
+        // Devices without pending task are not skipped for time
+        assertEquals(0, result.devicesSkipped);
+        assertEquals(1, session.maxConcurrent.get());
+    }
+
+    @Test
+    public void testConcurrencyLimitSharedByCallers() throws Exception {
+        for (final int concurrencyLimit : new int[]{1, 2}) {
+            final BLEConnectionScheduler scheduler = new BLEConnectionScheduler(concurrencyLimit);
+            final SimulatedSession session = new SimulatedSession();
+            final List<BLEDevice> devices = devices(20);
+            final AtomicInteger devicesProcessed = new AtomicInteger(0);
+            // Concurrent callers, e.g. scan processing and immediate send
+            final List<Thread> callers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                final List<BLEDevice> callerDevices = devices.subList(i * 10, (i + 1) * 10);
+                callers.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        devicesProcessed.addAndGet(scheduler.connect(callerDevices, all, session, 10000).devicesProcessed);
+                    }
+                }));
+            }
+            for (final Thread caller : callers) {
+                caller.start();
+            }
+            for (final Thread caller : callers) {
+                caller.join();
+            }
+            assertEquals(20, devicesProcessed.get());
+            assertEquals(20, session.connected.size());
+            assertTrue(session.maxConcurrent.get() <= concurrencyLimit);
+        }
+    }
+
+    @Test
+    public void testThroughputScalesWithConcurrencyLimit() {
+        final long timeLimitMillis = 1000;
+        int devicesProcessedSerial = 0;
+        for (final int concurrencyLimit : new int[]{1, 2, 4}) {
+            final List<BLEDevice> devices = devices(100);
+            final SimulatedSession session = new SimulatedSession();
+            final long t0 = System.currentTimeMillis();
+            final BLEConnectionScheduler.Result result = new BLEConnectionScheduler(concurrencyLimit).connect(devices, all, session, timeLimitMillis);
+            final int devicesProcessed = result.devicesProcessed;
+            final long t1 = System.currentTimeMillis();
+            System.err.println("throughput (concurrencyLimit=" + concurrencyLimit + ",devicesProcessed=" + devicesProcessed + ",elapsed=" + (t1 - t0) + "ms)");
+            assertTrue(session.maxConcurrent.get() <= concurrencyLimit);
+            assertEquals(devices.size(), result.devicesProcessed + result.devicesSkipped);
+            assertTrue(t1 - t0 < timeLimitMillis + sessionDurationMillis * 2);
+            if (concurrencyLimit == 1) {
+                devicesProcessedSerial = devicesProcessed;
+            } else {
+                assertTrue(devicesProcessed >= devicesProcessedSerial * concurrencyLimit * 3 / 4);
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Int32;
+import com.vmware.herald.sensor.datatype.PayloadData;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BLEConnectorTests {
+    private final static long connectDelayMillis = 50;
+    private final static long sessionDurationMillis = 300;
+
+    /// Fake GATT layer that connects after a delay and disconnects once a session has completed,
+    /// or does nothing if the device is unresponsive.
+    private final static class FakeGatt implements BLEConnector.Gatt<BLEDevice> {
+        private final ScheduledExecutorService callbacks = Executors.newSingleThreadScheduledExecutor();
+        private BLEConnector<BLEDevice> connector = null;
+        private boolean responsive = true;
+        private int closed = 0;
+
+        @Override
+        public BLEDevice connect(final BLEDevice device) {
+            if (!responsive) {
+                return device;
+            }
+            callbacks.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    device.state(BLEDeviceState.connected);
+                    connector.stateChanged(device);
+                }
+            }, connectDelayMillis, TimeUnit.MILLISECONDS);
+            callbacks.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    device.state(BLEDeviceState.disconnected);
+                    connector.stateChanged(device);
+                }
+            }, connectDelayMillis + sessionDurationMillis, TimeUnit.MILLISECONDS);
+            return device;
+        }
+
+        @Override
+        public void close(BLEDevice connection) {
+            closed++;
+        }
+    }
+
+    private static BLEDevice device(final ConcreteBLEDatabase database, final int i) {
+        final PayloadData payloadData = new PayloadData();
+        payloadData.append(new Int32(i));
+        return database.device(payloadData);
+    }
+
+    @Test
+    public void testConnect() {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final FakeGatt gatt = new FakeGatt();
+        final BLEConnector<BLEDevice> connector = new BLEConnector<>(gatt, 1000, 2000);
+        gatt.connector = connector;
+        final BLEDevice device = device(database, 1);
+        assertEquals(BLEConnector.Result.success, connector.connect(device));
+        assertEquals(BLEDeviceState.disconnected, device.state());
+        assertEquals(0, gatt.closed);
+        // Already connected
+        device.state(BLEDeviceState.connected);
+        assertEquals(BLEConnector.Result.alreadyConnected, connector.connect(device));
+    }
+
+    @Test
+    public void testConnectTimeout() {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final FakeGatt gatt = new FakeGatt();
+        gatt.responsive = false;
+        final BLEConnector<BLEDevice> connector = new BLEConnector<>(gatt, 200, 400);
+        gatt.connector = connector;
+        final BLEDevice device = device(database, 1);
+        assertEquals(BLEConnector.Result.connectTimeout, connector.connect(device));
+        assertEquals(1, gatt.closed);
+    }
+
+    @Test
+    public void testDisconnectTimeout() {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final FakeGatt gatt = new FakeGatt();
+        final BLEConnector<BLEDevice> connector = new BLEConnector<>(gatt, 1000, connectDelayMillis + sessionDurationMillis / 2);
+        gatt.connector = connector;
+        final BLEDevice device = device(database, 1);
+        assertEquals(BLEConnector.Result.disconnectTimeout, connector.connect(device));
+        assertEquals(BLEDeviceState.disconnected, device.state());
+        assertEquals(1, gatt.closed);
+    }
+
+    /// Connection lifecycle prior to BLEConnector, polling device state
+    private static void pollingConnect(final FakeGatt gatt, final BLEDevice device) throws Exception {
+        final long timeConnect = System.currentTimeMillis();
+        device.state(BLEDeviceState.connecting);
+        gatt.connect(device);
+        while (device.state() != BLEDeviceState.connected && device.state() != BLEDeviceState.disconnected && (System.currentTimeMillis() - timeConnect) < 12000) {
+            Thread.sleep(200);
+        }
+        while (device.state() != BLEDeviceState.disconnected && (System.currentTimeMillis() - timeConnect) < 60000) {
+            Thread.sleep(500);
+        }
+        device.state(BLEDeviceState.disconnected);
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        final int devices = 5;
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final FakeGatt gatt = new FakeGatt();
+        final BLEConnector<BLEDevice> connector = new BLEConnector<>(gatt, 12000, 60000);
+        gatt.connector = connector;
+        // Polling
+        long t0 = System.currentTimeMillis();
+        for (int i = 0; i < devices; i++) {
+            pollingConnect(gatt, device(database, i));
+        }
+        long t1 = System.currentTimeMillis();
+        final double pollingDevicesPerMinute = devices * 60000d / (t1 - t0);
+        // Event driven
+        t0 = System.currentTimeMillis();
+        for (int i = 0; i < devices; i++) {
+            assertEquals(BLEConnector.Result.success, connector.connect(device(database, i)));
+        }
+        t1 = System.currentTimeMillis();
+        final double eventDevicesPerMinute = devices * 60000d / (t1 - t0);
+        // Event driven lifecycle moves to the next device as soon as the session has closed,
+        // rather than up to 500ms later on the next poll
+        assertTrue(eventDevicesPerMinute >= pollingDevicesPerMinute * 1.5);
+    }
+}
@@ -0,0 +1,135 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.Int32;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BLEDeviceCacheTests {
+
+    private static PayloadData payloadData(final int i) {
+        final PayloadData payloadData = new PayloadData();
+        payloadData.append(new Int32(i));
+        return payloadData;
+    }
+
+    private static PseudoDeviceAddress pseudoDeviceAddress(final int i) {
+        final Data data = new Data((byte) 0, 2);
+        data.append(new Int32(i));
+        return new PseudoDeviceAddress(data.value);
+    }
+
+    private static File temporaryFile() throws Exception {
+        final File file = File.createTempFile("BLEDeviceCacheTests", ".bin");
+        file.deleteOnExit();
+        if (!file.delete()) {
+            throw new Exception("Failed to delete " + file);
+        }
+        return file;
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        final List<BLEDeviceCache.Entry> entries = Arrays.asList(
+                new BLEDeviceCache.Entry(pseudoDeviceAddress(1), 1234, BLEDeviceOperatingSystem.android, payloadData(1), "model", "name"),
+                new BLEDeviceCache.Entry(pseudoDeviceAddress(2), 5678, BLEDeviceOperatingSystem.ios, payloadData(2), null, null));
+        final List<BLEDeviceCache.Entry> decoded = BLEDeviceCache.decode(BLEDeviceCache.encode(entries));
+        assertNotNull(decoded);
+        assertEquals(2, decoded.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).pseudoDeviceAddress, decoded.get(i).pseudoDeviceAddress);
+            assertEquals(entries.get(i).lastUpdatedAt, decoded.get(i).lastUpdatedAt);
+            assertEquals(entries.get(i).operatingSystem, decoded.get(i).operatingSystem);
+            assertEquals(entries.get(i).payloadData, decoded.get(i).payloadData);
+            assertEquals(entries.get(i).model, decoded.get(i).model);
+            assertEquals(entries.get(i).deviceName, decoded.get(i).deviceName);
+        }
+        // Empty
+        assertEquals(0, BLEDeviceCache.decode(BLEDeviceCache.encode(new ArrayList<BLEDeviceCache.Entry>())).size());
+        // Invalid
+        assertNull(BLEDeviceCache.decode(new Data()));
+        final Data truncated = BLEDeviceCache.encode(entries);
+        assertNull(BLEDeviceCache.decode(truncated.subdata(0, truncated.value.length - 1)));
+    }
+
+    @Test
+    public void testSaveRestore() throws Exception {
+        final File file = temporaryFile();
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device1 = database.device(payloadData(1));
+        device1.pseudoDeviceAddress(pseudoDeviceAddress(1));
+        device1.operatingSystem(BLEDeviceOperatingSystem.android);
+        device1.model("model");
+        final BLEDevice device2 = database.device(payloadData(2));
+        device2.pseudoDeviceAddress(pseudoDeviceAddress(2));
+        // Devices without pseudo device address are not cached
+        database.device(payloadData(3));
+        // Devices not seen recently are not cached
+        final BLEDevice device4 = database.device(payloadData(4));
+        device4.pseudoDeviceAddress(pseudoDeviceAddress(4));
+        device4.lastUpdatedAt = new Date(0);
+        new BLEDeviceCache(file, TimeInterval.minutes(15)).save(database);
+
+        final BLEDeviceCache cache = new BLEDeviceCache(file, TimeInterval.minutes(15));
+        // Devices cannot be restored before the cache has been loaded
+        assertFalse(cache.loaded());
+        assertNull(cache.restore(pseudoDeviceAddress(1)));
+        cache.load();
+        assertTrue(cache.loaded());
+        final BLEDeviceCache.Entry entry1 = cache.restore(pseudoDeviceAddress(1));
+        assertNotNull(entry1);
+        assertEquals(payloadData(1), entry1.payloadData);
+        assertEquals(BLEDeviceOperatingSystem.android, entry1.operatingSystem);
+        assertEquals("model", entry1.model);
+        assertNull(entry1.deviceName);
+        // Restore is only possible once
+        assertNull(cache.restore(pseudoDeviceAddress(1)));
+        assertNull(cache.restore(pseudoDeviceAddress(3)));
+        assertNull(cache.restore(pseudoDeviceAddress(4)));
+
+        // Devices not restored yet are kept on save
+        cache.save(new ConcreteBLEDatabase());
+        final BLEDeviceCache reloaded = new BLEDeviceCache(file, TimeInterval.minutes(15));
+        reloaded.load();
+        final BLEDeviceCache.Entry entry2 = reloaded.restore(pseudoDeviceAddress(2));
+        assertNotNull(entry2);
+        assertEquals(payloadData(2), entry2.payloadData);
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        final File file = temporaryFile();
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device = database.device(payloadData(1));
+        device.pseudoDeviceAddress(pseudoDeviceAddress(1));
+        new BLEDeviceCache(file, TimeInterval.minutes(15)).save(database);
+        // Cached devices expire
+        final BLEDeviceCache expired = new BLEDeviceCache(file, TimeInterval.zero);
+        expired.load();
+        assertNull(expired.restore(pseudoDeviceAddress(1)));
+        // Missing file is an empty cache
+        final BLEDeviceCache missing = new BLEDeviceCache(temporaryFile(), TimeInterval.minutes(15));
+        missing.load();
+        assertTrue(missing.loaded());
+        assertNull(missing.restore(pseudoDeviceAddress(1)));
+    }
+}
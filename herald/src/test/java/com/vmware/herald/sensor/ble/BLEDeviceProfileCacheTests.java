@@ -0,0 +1,101 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.Int32;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BLEDeviceProfileCacheTests {
+
+    private static PayloadData payloadData(final int i) {
+        final PayloadData payloadData = new PayloadData();
+        payloadData.append(new Int32(i));
+        return payloadData;
+    }
+
+    private static PseudoDeviceAddress pseudoDeviceAddress(final int i) {
+        final Data data = new Data((byte) 0, 2);
+        data.append(new Int32(i));
+        return new PseudoDeviceAddress(data.value);
+    }
+
+    private static BLEDeviceProfileCache.Profile profile(final BLEDeviceOperatingSystem operatingSystem, final String model) {
+        return new BLEDeviceProfileCache.Profile(operatingSystem, true, true, false, model != null, false, model, null, System.currentTimeMillis());
+    }
+
+    @Test
+    public void testIdentity() {
+        final BLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDeviceProfileCache cache = new BLEDeviceProfileCache();
+        // Android device known by pseudo device address
+        final BLEDevice android = database.device(payloadData(1));
+        android.pseudoDeviceAddress(pseudoDeviceAddress(1));
+        final BLEDeviceProfileCache.Profile androidProfile = profile(BLEDeviceOperatingSystem.android, "model");
+        assertTrue(cache.put(android, androidProfile));
+        // iOS device known by payload
+        final BLEDevice ios = database.device(payloadData(2));
+        final BLEDeviceProfileCache.Profile iosProfile = profile(BLEDeviceOperatingSystem.ios, null);
+        assertTrue(cache.put(ios, iosProfile));
+
+        // Re-identified devices
+        final BLEDatabase otherDatabase = new ConcreteBLEDatabase();
+        final BLEDevice android2 = otherDatabase.device(payloadData(3));
+        android2.pseudoDeviceAddress(pseudoDeviceAddress(1));
+        assertSame(androidProfile, cache.get(android2));
+        assertSame(iosProfile, cache.get(otherDatabase.device(payloadData(2))));
+        assertNull(cache.get(otherDatabase.device(payloadData(4))));
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testInvalidation() {
+        final BLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDeviceProfileCache cache = new BLEDeviceProfileCache();
+        final BLEDevice device = database.device(payloadData(1));
+        assertTrue(cache.put(device, profile(BLEDeviceOperatingSystem.ios, null)));
+        // Introspection data does not change layout
+        assertTrue(cache.put(device, profile(BLEDeviceOperatingSystem.ios, "model")));
+        assertEquals(0, cache.invalidations());
+        // Discovery contradicts layout
+        assertFalse(cache.put(device, profile(BLEDeviceOperatingSystem.android, null)));
+        assertEquals(BLEDeviceOperatingSystem.android, cache.get(device).operatingSystem);
+        assertEquals(1, cache.invalidations());
+        // Missing sensor service
+        cache.invalidate(device);
+        assertNull(cache.get(device));
+        assertEquals(2, cache.invalidations());
+    }
+
+    @Test
+    public void testExpiryAndCapacity() {
+        final BLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device = database.device(payloadData(1));
+        final BLEDeviceProfileCache expired = new BLEDeviceProfileCache(10, TimeInterval.zero);
+        expired.put(device, profile(BLEDeviceOperatingSystem.ios, null));
+        assertNull(expired.get(device));
+
+        final BLEDeviceProfileCache cache = new BLEDeviceProfileCache(2, TimeInterval.minutes(60));
+        for (int i = 0; i < 3; i++) {
+            cache.put(database.device(payloadData(i)), profile(BLEDeviceOperatingSystem.ios, null));
+        }
+        // Least recently used profile is evicted
+        assertNull(cache.get(database.device(payloadData(0))));
+        assertNotNull(cache.get(database.device(payloadData(1))));
+        assertNotNull(cache.get(database.device(payloadData(2))));
+    }
+}
@@ -0,0 +1,58 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BLEGattServerMetricsTests {
+    private final static long hour = TimeInterval.minutes(60).millis();
+    private final static long refresh = TimeInterval.minutes(15).millis();
+    private final static long advertOff = TimeInterval.seconds(4).millis();
+
+    @Test
+    public void testFailedReadWindows() {
+        final BLEGattServerMetrics metrics = new BLEGattServerMetrics(0);
+        // First start is not a failed read window
+        metrics.started(0);
+        assertEquals(1, metrics.starts());
+        assertEquals(0, metrics.failedReadWindows());
+        // Restart
+        metrics.stopped(1000);
+        metrics.started(5000);
+        assertEquals(1, metrics.stops());
+        assertEquals(1, metrics.failedReadWindows());
+        assertEquals(4000, metrics.failedReadWindowMillis());
+        // Repeated stop counts as a single window from first stop
+        metrics.stopped(6000);
+        metrics.stopped(7000);
+        metrics.started(10000);
+        assertEquals(2, metrics.failedReadWindows());
+        assertEquals(8000, metrics.failedReadWindowMillis());
+        metrics.readFailed();
+        assertEquals(1, metrics.failedReads());
+        assertEquals(2 * 3600d / 10, metrics.failedReadWindowsPerHour(10000), 0.001);
+    }
+
+    @Test
+    public void testAdvertRefresh() {
+        // GATT server restarted on every advert refresh
+        final BLEGattServerMetrics metrics = new BLEGattServerMetrics(0);
+        metrics.started(0);
+        for (long now = refresh; now <= hour; now += refresh + advertOff) {
+            metrics.stopped(now);
+            metrics.started(now + advertOff);
+        }
+        assertEquals(4, metrics.starts());
+        assertEquals(3, metrics.stops());
+        assertEquals(3, metrics.failedReadWindows());
+        assertEquals(3 * advertOff, metrics.failedReadWindowMillis());
+        assertEquals(3, metrics.failedReadWindowsPerHour(hour), 0.001);
+        System.err.println("testAdvertRefresh (failedReadWindows=" + metrics.failedReadWindowsPerHour(hour) + "/hour,failedReadWindowMillis=" + metrics.failedReadWindowMillis() + ")");
+    }
+}
@@ -0,0 +1,162 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Callback;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.ImmediateSendData;
+import com.vmware.herald.sensor.datatype.Int32;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BLEImmediateSendOutboxTests {
+
+    private static BLEDevice device(final BLEDatabase database, final int i) {
+        final PayloadData payloadData = new PayloadData();
+        payloadData.append(new Int32(i));
+        return database.device(payloadData);
+    }
+
+    private static Data message(final int i) {
+        final Data data = new Data();
+        data.append(new Int32(i));
+        return data;
+    }
+
+    private static List<BLEImmediateSendOutbox.Delivery> deliveries(final List<BLEImmediateSendOutbox.Delivery> deliveries, final BLEImmediateSendOutbox.Result result) {
+        final List<BLEImmediateSendOutbox.Delivery> filtered = new ArrayList<>();
+        for (final BLEImmediateSendOutbox.Delivery delivery : deliveries) {
+            if (delivery.result == result) {
+                filtered.add(delivery);
+            }
+        }
+        return filtered;
+    }
+
+    @Test
+    public void testQueue() {
+        final BLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device = device(database, 1);
+        final List<BLEImmediateSendOutbox.Delivery> deliveries = new ArrayList<>();
+        final BLEImmediateSendOutbox outbox = new BLEImmediateSendOutbox(2, 0, new Callback<BLEImmediateSendOutbox.Delivery>() {
+            @Override
+            public void accept(BLEImmediateSendOutbox.Delivery delivery) {
+                deliveries.add(delivery);
+            }
+        });
+        assertFalse(outbox.pending(device));
+        assertNull(outbox.next(device, true));
+        // Second message does not overwrite first, third exceeds capacity
+        assertTrue(outbox.offer(device, message(1)));
+        assertTrue(outbox.offer(device, message(2)));
+        assertFalse(outbox.offer(device, message(3)));
+        assertEquals(1, outbox.rejected());
+        assertTrue(outbox.pending(device));
+        assertFalse(outbox.pending(device(database, 2)));
+        // One message per write without coalescing
+        for (int i = 1; i <= 2; i++) {
+            final Data data = outbox.next(device, true);
+            assertEquals(message(i), SignalCharacteristicData.decodeImmediateSend(data).data);
+            assertEquals(i - 1, deliveries.size());
+            outbox.completed(device, true);
+            assertEquals(i, deliveries.size());
+            assertEquals(message(i), deliveries.get(i - 1).data);
+            assertEquals(BLEImmediateSendOutbox.Result.delivered, deliveries.get(i - 1).result);
+        }
+        assertFalse(outbox.pending(device));
+        assertEquals(2, outbox.delivered());
+        assertEquals(2, outbox.writes());
+    }
+
+    @Test
+    public void testCoalescing() {
+        final BLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device = device(database, 1);
+        final List<BLEImmediateSendOutbox.Delivery> deliveries = new ArrayList<>();
+        // Each encoded message is 7 bytes, limit allows 3 messages per write
+        final BLEImmediateSendOutbox outbox = new BLEImmediateSendOutbox(8, 21, new Callback<BLEImmediateSendOutbox.Delivery>() {
+            @Override
+            public void accept(BLEImmediateSendOutbox.Delivery delivery) {
+                deliveries.add(delivery);
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            assertTrue(outbox.offer(device, message(i)));
+        }
+        final Data first = outbox.next(device, true);
+        assertEquals(21, first.value.length);
+        // Receiver separates coalesced bundles on reassembly
+        final List<byte[]> firstBundles = new BLEWriteReassembly().append("central", first.value, 0);
+        assertEquals(3, firstBundles.size());
+        for (int i = 0; i < 3; i++) {
+            final ImmediateSendData immediateSendData = SignalCharacteristicData.decodeImmediateSend(new Data(firstBundles.get(i)));
+            assertNotNull(immediateSendData);
+            assertEquals(message(i), immediateSendData.data);
+        }
+        outbox.completed(device, true);
+        assertEquals(3, deliveries(deliveries, BLEImmediateSendOutbox.Result.delivered).size());
+        final Data second = outbox.next(device, true);
+        assertEquals(14, second.value.length);
+        assertEquals(2, new BLEWriteReassembly().append("central", second.value, 0).size());
+        outbox.completed(device, false);
+        assertEquals(2, deliveries(deliveries, BLEImmediateSendOutbox.Result.failed).size());
+        assertEquals(2, outbox.writes());
+        // One message per write for receivers that do not reassemble writes
+        for (int i = 0; i < 2; i++) {
+            assertTrue(outbox.offer(device, message(i)));
+        }
+        for (int i = 0; i < 2; i++) {
+            assertEquals(message(i), SignalCharacteristicData.decodeImmediateSend(outbox.next(device, false)).data);
+            outbox.completed(device, true);
+        }
+        assertEquals(5, deliveries(deliveries, BLEImmediateSendOutbox.Result.delivered).size());
+        assertEquals(4, outbox.writes());
+        System.err.println("testCoalescing (messages=7,outbox=" + outbox + ")");
+    }
+
+    @Test
+    public void testConnectionEnded() {
+        final BLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device = device(database, 1);
+        final List<BLEImmediateSendOutbox.Delivery> deliveries = new ArrayList<>();
+        final BLEImmediateSendOutbox outbox = new BLEImmediateSendOutbox(new Callback<BLEImmediateSendOutbox.Delivery>() {
+            @Override
+            public void accept(BLEImmediateSendOutbox.Delivery delivery) {
+                deliveries.add(delivery);
+            }
+        });
+        // Connection failed, attempted messages fail
+        outbox.offer(device, message(1));
+        outbox.attempt(device);
+        outbox.connectionEnded(device);
+        assertEquals(1, deliveries(deliveries, BLEImmediateSendOutbox.Result.failed).size());
+        assertFalse(outbox.pending(device));
+        // Connection ended during write, in flight message fails,
+        // message queued after connection was initiated remains
+        outbox.offer(device, message(2));
+        outbox.attempt(device);
+        assertNotNull(outbox.next(device, true));
+        outbox.offer(device, message(3));
+        outbox.connectionEnded(device);
+        assertEquals(2, deliveries(deliveries, BLEImmediateSendOutbox.Result.failed).size());
+        assertEquals(message(2), deliveries.get(1).data);
+        assertTrue(outbox.pending(device));
+        assertEquals(message(3), SignalCharacteristicData.decodeImmediateSend(outbox.next(device, true)).data);
+        outbox.completed(device, true);
+        assertEquals(1, outbox.delivered());
+        assertEquals(2, outbox.failed());
+    }
+}
@@ -0,0 +1,93 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BLELatencyHistogramTests {
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, BLELatencyHistogram.bucket(-1));
+        assertEquals(0, BLELatencyHistogram.bucket(0));
+        assertEquals(1, BLELatencyHistogram.bucket(1));
+        assertEquals(2, BLELatencyHistogram.bucket(2));
+        assertEquals(2, BLELatencyHistogram.bucket(3));
+        assertEquals(3, BLELatencyHistogram.bucket(4));
+        assertEquals(11, BLELatencyHistogram.bucket(1024));
+        assertEquals(BLELatencyHistogram.buckets - 1, BLELatencyHistogram.bucket(Long.MAX_VALUE));
+        for (long millis = 0; millis < 100000; millis += 7) {
+            assertTrue(millis < BLELatencyHistogram.upperBound(BLELatencyHistogram.bucket(millis)));
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        final BLELatencyHistogram histogram = new BLELatencyHistogram();
+        final BLELatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.count);
+        assertEquals(0, empty.mean(), Double.MIN_VALUE);
+        assertEquals(0, empty.quantile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.add(i);
+        }
+        final BLELatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.count);
+        assertEquals(5050, snapshot.sum);
+        assertEquals(100, snapshot.max);
+        assertEquals(50.5, snapshot.mean(), 0.001);
+        // Quantiles are upper bound of bucket, i.e. within a factor of 2
+        assertEquals(64, snapshot.quantile(0.5));
+        assertEquals(128, snapshot.quantile(0.95));
+        assertEquals(2, snapshot.quantile(0));
+        // Snapshot is not affected by subsequent updates
+        histogram.add(1000);
+        assertEquals(100, snapshot.count);
+        assertEquals(101, histogram.snapshot().count);
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final BLELatencyHistogram histogram = new BLELatencyHistogram();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.add(i % 1000 + offset);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        // Polling snapshots while recording
+        long snapshots = 0;
+        while (threads.get(0).isAlive()) {
+            histogram.snapshot();
+            snapshots++;
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final BLELatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(40000, snapshot.count);
+        assertEquals(1002, snapshot.max);
+        long total = 0;
+        for (int i = 0; i < BLELatencyHistogram.buckets; i++) {
+            total += snapshot.count(i);
+        }
+        assertEquals(40000, total);
+        System.err.println("testConcurrentUpdates (snapshots=" + snapshots + ",histogram=" + snapshot + ")");
+    }
+}
@@ -0,0 +1,112 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.Device;
+import com.vmware.herald.sensor.datatype.Int64;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PayloadTimestamp;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+import com.vmware.herald.sensor.payload.DefaultPayloadDataSupplier;
+import com.vmware.herald.sensor.payload.test.TestPayloadDataSupplier;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BLEPayloadDataCacheTests {
+    private final static long period = TimeInterval.minutes(6).millis();
+
+    /// Payload data supplier rotating payload every 6 minutes
+    private final static class RotatingPayloadDataSupplier extends DefaultPayloadDataSupplier {
+        @Override
+        public PayloadData payload(PayloadTimestamp timestamp, Device device) {
+            final PayloadData payloadData = new PayloadData();
+            payloadData.append(new Int64(timestamp.value.getTime() / period));
+            return payloadData;
+        }
+    }
+
+    @Test
+    public void testSharedPayload() {
+        final BLEPayloadDataCache cache = new BLEPayloadDataCache(new RotatingPayloadDataSupplier(), TimeInterval.minutes(6), 256, TimeInterval.minute);
+        final long start = 1000 * period;
+        // One supplier call for all centrals within period
+        final PayloadData payloadData = cache.payloadData("central0", start);
+        for (int i = 0; i < 1000; i++) {
+            assertSame(payloadData, cache.payloadData("central" + i, start + i * 100));
+        }
+        assertSame(payloadData, cache.payloadData(start + period - 1));
+        assertEquals(1, cache.supplierCalls());
+        // Payload is refreshed when it rotates
+        final PayloadData rotated = cache.payloadData(start + period);
+        assertNotEquals(payloadData, rotated);
+        assertEquals(2, cache.supplierCalls());
+        System.err.println("testSharedPayload (centrals=1000,supplierCalls=" + cache.supplierCalls() + ")");
+    }
+
+    @Test
+    public void testPinnedPayload() {
+        final BLEPayloadDataCache cache = new BLEPayloadDataCache(new RotatingPayloadDataSupplier(), TimeInterval.minutes(6), 2, TimeInterval.minute);
+        final long start = 1000 * period;
+        // Consecutive reads by central across period boundary get the same payload
+        final PayloadData payloadData = cache.payloadData("central", start + period - 100);
+        assertSame(payloadData, cache.payloadData("central", start + period + 100));
+        assertNotEquals(payloadData, cache.payloadData("other", start + period + 100));
+        // Pin expires
+        assertNotEquals(payloadData, cache.payloadData("central", start + period + TimeInterval.minute.millis()));
+        // Removed on disconnection
+        cache.remove("central");
+        assertEquals(1, cache.size());
+        // Bounded by capacity
+        for (int i = 0; i < 10; i++) {
+            cache.payloadData("central" + i, start);
+        }
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testReadSlices() {
+        // 129 byte payload requires 6 reads at default MTU
+        final BLEPayloadDataCache cache = new BLEPayloadDataCache(new TestPayloadDataSupplier(1), TimeInterval.minutes(6), 256, TimeInterval.minute);
+        final long start = 1000 * period;
+        final byte[] payload = cache.payloadData(start).value;
+        assertEquals(129, payload.length);
+        // Standard offsets are precomputed, full payload is not copied
+        final long precomputed = cache.sliceCopies();
+        assertEquals(5, precomputed);
+        for (int i = 0; i < 100; i++) {
+            for (int offset = 0; offset < payload.length; offset += 22) {
+                final byte[] value = cache.read("central" + i, offset, start + i);
+                assertArrayEquals(Arrays.copyOfRange(payload, offset, payload.length), value);
+                assertSame(value, cache.read("central" + i, offset, start + i));
+            }
+        }
+        assertSame(payload, cache.read("central", 0, start));
+        assertEquals(precomputed, cache.sliceCopies());
+        // Other offsets are memoised
+        assertArrayEquals(Arrays.copyOfRange(payload, 100, payload.length), cache.read("central", 100, start));
+        cache.read("central", 100, start);
+        assertEquals(precomputed + 1, cache.sliceCopies());
+        assertEquals(0, cache.read("central", payload.length, start).length);
+        assertNull(cache.read("central", payload.length + 1, start));
+        assertNull(cache.read("central", -1, start));
+        // Reads per second
+        assertEquals(0, cache.readsPerSecond(start));
+        assertEquals(cache.reads(), cache.readsPerSecond(start + 1000));
+        assertEquals(0, cache.readsPerSecond(start + 2000));
+        // Counters are reported for logging
+        assertTrue(cache.toString().contains("reads=" + cache.reads()));
+        assertTrue(cache.toString().contains("sliceCopies=" + cache.sliceCopies()));
+        System.err.println("testReadSlices (reads=" + cache.reads() + ",sliceCopies=" + cache.sliceCopies() + ")");
+    }
+}
@@ -0,0 +1,64 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Int32;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BLEPayloadSharingHistoryTests {
+
+    private static PayloadData payloadData(final int i) {
+        final PayloadData payloadData = new PayloadData();
+        payloadData.append(new Int32(i));
+        return payloadData;
+    }
+
+    @Test
+    public void testContains() {
+        final BLEPayloadSharingHistory history = new BLEPayloadSharingHistory();
+        assertFalse(history.contains(payloadData(1)));
+        history.add(payloadData(1));
+        assertTrue(history.contains(payloadData(1)));
+        assertFalse(history.contains(payloadData(2)));
+        // Repeated add does not duplicate entries
+        history.add(payloadData(1));
+        assertEquals(1, history.size());
+    }
+
+    @Test
+    public void testCapacity() {
+        final BLEPayloadSharingHistory history = new BLEPayloadSharingHistory(10, TimeInterval.minute);
+        for (int i = 0; i < 100; i++) {
+            history.add(payloadData(i));
+        }
+        assertEquals(10, history.size());
+        // Oldest entries are evicted first
+        assertFalse(history.contains(payloadData(89)));
+        assertTrue(history.contains(payloadData(90)));
+        assertTrue(history.contains(payloadData(99)));
+        // Repeated add refreshes entry
+        history.add(payloadData(90));
+        history.add(payloadData(100));
+        assertTrue(history.contains(payloadData(90)));
+        assertFalse(history.contains(payloadData(91)));
+    }
+
+    @Test
+    public void testExpiry() {
+        final BLEPayloadSharingHistory history = new BLEPayloadSharingHistory(10, TimeInterval.zero);
+        history.add(payloadData(1));
+        assertFalse(history.contains(payloadData(1)));
+        // Expired entries are removed on add, including the new entry when expiry is zero
+        history.add(payloadData(2));
+        assertEquals(0, history.size());
+    }
+}
@@ -0,0 +1,81 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BLEReceiverMetricsTests {
+
+    @Test
+    public void testSnapshot() {
+        final BLEReceiverMetrics metrics = new BLEReceiverMetrics();
+        // All stages are present from the start
+        final BLEReceiverMetrics.Snapshot empty = metrics.snapshot();
+        assertEquals(BLEReceiverMetrics.Stage.values().length, empty.stages.size());
+        assertTrue(empty.tasks.isEmpty());
+        assertEquals(BLEScanDutyCycle.Decision.values().length, empty.scanDutyCycleDecisions.size());
+        assertEquals(0, (long) empty.scanDutyCycleDecisions.get(BLEScanDutyCycle.Decision.reset));
+
+        metrics.stage(BLEReceiverMetrics.Stage.didDiscover, 5);
+        metrics.stage(BLEReceiverMetrics.Stage.connect, 3000);
+        metrics.stage(BLEReceiverMetrics.Stage.connect, 5000);
+        metrics.task(BLEDeviceOperatingSystem.ios, "readPayload", 800);
+        metrics.task(BLEDeviceOperatingSystem.android, "readPayload", 1200);
+        metrics.task(BLEDeviceOperatingSystem.android, "writeRSSI", 100);
+        metrics.scanResultsIn(10);
+        metrics.scanResultsOut(4);
+        metrics.scanResultsDropped(1);
+        metrics.devicesSkippedForBudget(2);
+        metrics.scanDutyCycle(BLEScanDutyCycle.Decision.reset, 1000, 2000, 30);
+        metrics.scanDutyCycle(BLEScanDutyCycle.Decision.lengthen, 2000, 4000, 0);
+        metrics.scanDutyCycle(BLEScanDutyCycle.Decision.lengthen, 4000, 8000, 0);
+
+        final BLEReceiverMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.stages.get(BLEReceiverMetrics.Stage.didDiscover).count);
+        assertEquals(2, snapshot.stages.get(BLEReceiverMetrics.Stage.connect).count);
+        assertEquals(5000, snapshot.stages.get(BLEReceiverMetrics.Stage.connect).max);
+        assertEquals(0, snapshot.stages.get(BLEReceiverMetrics.Stage.processDevice).count);
+        assertEquals(1, snapshot.tasks.get(BLEDeviceOperatingSystem.ios).size());
+        assertEquals(800, snapshot.tasks.get(BLEDeviceOperatingSystem.ios).get("readPayload").sum);
+        assertEquals(2, snapshot.tasks.get(BLEDeviceOperatingSystem.android).size());
+        assertEquals(1200, snapshot.tasks.get(BLEDeviceOperatingSystem.android).get("readPayload").sum);
+        assertFalse(snapshot.tasks.containsKey(BLEDeviceOperatingSystem.unknown));
+        assertEquals(10, snapshot.scanResultsIn);
+        assertEquals(4, snapshot.scanResultsOut);
+        assertEquals(1, snapshot.scanResultsDropped);
+        assertEquals(2, snapshot.devicesSkippedForBudget);
+        assertEquals(1, (long) snapshot.scanDutyCycleDecisions.get(BLEScanDutyCycle.Decision.reset));
+        assertEquals(2, (long) snapshot.scanDutyCycleDecisions.get(BLEScanDutyCycle.Decision.lengthen));
+        assertEquals(0, (long) snapshot.scanDutyCycleDecisions.get(BLEScanDutyCycle.Decision.shorten));
+        assertEquals(BLEScanDutyCycle.Decision.lengthen, snapshot.scanDutyCycleLastDecision);
+        assertEquals(4000, snapshot.scanRestDurationMillis);
+        assertEquals(8000, snapshot.scanOffDurationMillis);
+        assertEquals(0, snapshot.discoveryRatePerMinute, Double.MIN_VALUE);
+        // Earlier snapshot is unchanged
+        assertEquals(0, empty.scanResultsIn);
+        assertEquals(0, empty.stages.get(BLEReceiverMetrics.Stage.connect).count);
+    }
+
+    @Test
+    public void testSnapshotCost() {
+        final BLEReceiverMetrics metrics = new BLEReceiverMetrics();
+        for (final BLEDeviceOperatingSystem operatingSystem : BLEDeviceOperatingSystem.values()) {
+            for (final String task : new String[]{"readPayload", "writePayload", "writeRSSI", "writePayloadSharing", "immediateSend", "readModel", "readDeviceName"}) {
+                metrics.task(operatingSystem, task, 100);
+            }
+        }
+        final int snapshots = 10000;
+        final long t0 = System.nanoTime();
+        for (int i = 0; i < snapshots; i++) {
+            metrics.snapshot();
+        }
+        final long t1 = System.nanoTime();
+        System.err.println("testSnapshotCost (snapshots=" + snapshots + ",meanCost=" + ((t1 - t0) / snapshots / 1000d) + "us)");
+    }
+}
@@ -0,0 +1,142 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import com.vmware.herald.sensor.SensorDelegate;
+import com.vmware.herald.sensor.datatype.BluetoothState;
+import com.vmware.herald.sensor.datatype.Int32;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.TargetIdentifier;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+/// Simulation of devices for driving the task planning of ConcreteBLEReceiver without Bluetooth.
+/// Devices keep task registrations on a simulated clock.
+public class BLEReceiverSimulation {
+
+    /// Receiver without scan loop, with transmitter that is supported or not.
+    public static ConcreteBLEReceiver receiver(final BLEDatabase database, final boolean transmitterSupported) {
+        final BluetoothStateManager bluetoothStateManager = new BluetoothStateManager() {
+            @Override
+            public BluetoothState state() {
+                return BluetoothState.poweredOn;
+            }
+        };
+        final BLETransmitter transmitter = new BLETransmitter() {
+            private final BLEGattServerMetrics gattServerMetrics = new BLEGattServerMetrics();
+
+            @Override
+            public void add(SensorDelegate delegate) {
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public PayloadData payloadData() {
+                return BLEReceiverSimulation.payloadData(0);
+            }
+
+            @Override
+            public boolean isSupported() {
+                return transmitterSupported;
+            }
+
+            @Override
+            public BLEGattServerMetrics gattServerMetrics() {
+                return gattServerMetrics;
+            }
+        };
+        return new ConcreteBLEReceiver(null, bluetoothStateManager, database, transmitter, null);
+    }
+
+    public static PayloadData payloadData(final int i) {
+        final PayloadData payloadData = new PayloadData();
+        payloadData.append(new Int32(i));
+        return payloadData;
+    }
+
+    /// Device with task registrations on a simulated clock.
+    public static class Device extends BLEDevice {
+        private long now = 0;
+        private Long lastPayloadDataUpdate = null;
+        private Long lastWritePayloadAt = null;
+        private Long lastWriteRssiAt = null;
+        private Long lastWritePayloadSharingAt = null;
+
+        public Device(final BLEDeviceOperatingSystem operatingSystem) {
+            super(new TargetIdentifier(), new BLEDeviceDelegate() {
+                @Override
+                public void device(BLEDevice device, BLEDeviceAttribute didUpdate) {
+                }
+            });
+            operatingSystem(operatingSystem);
+            if (operatingSystem == BLEDeviceOperatingSystem.ios || operatingSystem == BLEDeviceOperatingSystem.android) {
+                payloadCharacteristic(new BluetoothGattCharacteristic(BLESensorConfiguration.payloadCharacteristicUUID, 0, 0));
+                signalCharacteristic(new BluetoothGattCharacteristic(operatingSystem == BLEDeviceOperatingSystem.ios ?
+                        BLESensorConfiguration.iosSignalCharacteristicUUID : BLESensorConfiguration.androidSignalCharacteristicUUID, 0, 0));
+            }
+        }
+
+        /// Set simulated time in milliseconds.
+        public void now(final long now) {
+            this.now = now;
+        }
+
+        private TimeInterval since(final Long time) {
+            return (time == null ? TimeInterval.never : new TimeInterval((now - time) / 1000));
+        }
+
+        @Override
+        public void payloadData(PayloadData payloadData) {
+            super.payloadData(payloadData);
+            lastPayloadDataUpdate = now;
+        }
+
+        @Override
+        public TimeInterval timeIntervalSinceLastPayloadDataUpdate() {
+            return since(lastPayloadDataUpdate);
+        }
+
+        @Override
+        public void registerWritePayload() {
+            super.registerWritePayload();
+            lastWritePayloadAt = now;
+        }
+
+        @Override
+        public TimeInterval timeIntervalSinceLastWritePayload() {
+            return since(lastWritePayloadAt);
+        }
+
+        @Override
+        public void registerWriteRssi() {
+            super.registerWriteRssi();
+            lastWriteRssiAt = now;
+        }
+
+        @Override
+        public TimeInterval timeIntervalSinceLastWriteRssi() {
+            return since(lastWriteRssiAt);
+        }
+
+        @Override
+        public void registerWritePayloadSharing() {
+            super.registerWritePayloadSharing();
+            lastWritePayloadSharingAt = now;
+        }
+
+        @Override
+        public TimeInterval timeIntervalSinceLastWritePayloadSharing() {
+            return since(lastWritePayloadSharingAt);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BLEScanDutyCycleTests {
+    private final static long scanOnDurationMillis = 4000;
+
+    @Test
+    public void testFixed() {
+        final BLEScanDutyCycle dutyCycle = new BLEScanDutyCycle(1000, 1000, 2000, 2000);
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            now += scanOnDurationMillis + dutyCycle.restDurationMillis() + dutyCycle.offDurationMillis();
+            assertEquals(BLEScanDutyCycle.Decision.hold, dutyCycle.update(now, (i % 2), (i % 3)));
+            assertEquals(1000, dutyCycle.restDurationMillis());
+            assertEquals(2000, dutyCycle.offDurationMillis());
+        }
+        assertEquals(10, dutyCycle.held());
+    }
+
+    @Test
+    public void testAdaptive() {
+        final BLEScanDutyCycle dutyCycle = new BLEScanDutyCycle(1000, 4000, 2000, 30000);
+        long now = 0;
+        // Quiet environment lengthens periods up to maximum
+        assertEquals(BLEScanDutyCycle.Decision.lengthen, dutyCycle.update(now += 7000, 0, 0));
+        assertEquals(2000, dutyCycle.restDurationMillis());
+        assertEquals(4000, dutyCycle.offDurationMillis());
+        for (int i = 0; i < 10; i++) {
+            dutyCycle.update(now += 30000, 0, 0);
+        }
+        assertEquals(4000, dutyCycle.restDurationMillis());
+        assertEquals(30000, dutyCycle.offDurationMillis());
+        assertEquals(BLEScanDutyCycle.Decision.hold, dutyCycle.lastDecision());
+        // Pending work shortens periods
+        assertEquals(BLEScanDutyCycle.Decision.shorten, dutyCycle.update(now += 38000, 0, 5));
+        assertEquals(2000, dutyCycle.restDurationMillis());
+        assertEquals(15000, dutyCycle.offDurationMillis());
+        // New devices reset periods to minimum
+        assertEquals(BLEScanDutyCycle.Decision.reset, dutyCycle.update(now += 21000, 6, 0));
+        assertEquals(1000, dutyCycle.restDurationMillis());
+        assertEquals(2000, dutyCycle.offDurationMillis());
+        assertEquals(6 * 60000d / 21000, dutyCycle.discoveryRatePerMinute(), 0.001);
+        assertEquals(BLEScanDutyCycle.Decision.hold, dutyCycle.update(now += 7000, 1, 0));
+        assertEquals(1, dutyCycle.shortened());
+        assertEquals(1, dutyCycle.reset());
+    }
+
+    /// Fraction of time spent scanning over one hour for a quiet environment, where the only
+    /// device is discovered in the first scan.
+    private static double scanningOverOneHour(final BLEScanDutyCycle dutyCycle) {
+        long now = 0, scanning = 0;
+        int cycles = 0;
+        while (now < 3600000) {
+            now += scanOnDurationMillis + dutyCycle.restDurationMillis() + dutyCycle.offDurationMillis();
+            scanning += scanOnDurationMillis;
+            dutyCycle.update(now, (cycles == 0 ? 1 : 0), 0);
+            cycles++;
+        }
+        System.err.println("testQuietEnvironment (cycles=" + cycles + ",scanning=" + Math.round(100d * scanning / now) + "%," + dutyCycle + ")");
+        return (double) scanning / now;
+    }
+
+    /// Adaptive duty cycle spends less time scanning than a fixed duty cycle in a quiet environment.
+    @Test
+    public void testQuietEnvironment() {
+        final double fixed = scanningOverOneHour(new BLEScanDutyCycle(1000, 1000, 2000, 2000));
+        final double adaptive = scanningOverOneHour(new BLEScanDutyCycle(1000, 4000, 2000, 30000));
+        assertTrue(adaptive < fixed);
+    }
+}
@@ -0,0 +1,74 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BLEScanResultBufferTests {
+
+    @Test
+    public void testCoalesce() {
+        final BLEScanResultBuffer<String> buffer = new BLEScanResultBuffer<>();
+        buffer.add("A", "A1", -70);
+        buffer.add("B", "B1", -60);
+        buffer.add("A", "A2", -50);
+        buffer.add("A", "A3", -90);
+        assertEquals(2, buffer.size());
+        assertEquals(4, buffer.received());
+        assertEquals(2, buffer.coalesced());
+        assertEquals(0, buffer.dropped());
+
+        final List<BLEScanResultBuffer.Entry<String>> entries = buffer.drain();
+        assertEquals(0, buffer.size());
+        assertEquals(2, entries.size());
+        // Order of first appearance, latest record
+        assertEquals("A", entries.get(0).address);
+        assertEquals("A3", entries.get(0).record());
+        assertEquals(3, entries.get(0).rssiCount());
+        assertEquals(-50, entries.get(0).rssiMax());
+        assertEquals(-70, entries.get(0).rssiMean(), Double.MIN_VALUE);
+        assertEquals("B", entries.get(1).address);
+        assertEquals("B1", entries.get(1).record());
+        assertEquals(1, entries.get(1).rssiCount());
+        assertEquals(-60, entries.get(1).rssiMax());
+    }
+
+    @Test
+    public void testCapacity() {
+        final BLEScanResultBuffer<String> buffer = new BLEScanResultBuffer<>(2);
+        assertTrue(buffer.add("A", "A1", -70));
+        assertTrue(buffer.add("B", "B1", -70));
+        // New address is dropped when full, existing addresses are still coalesced
+        assertFalse(buffer.add("C", "C1", -70));
+        assertTrue(buffer.add("A", "A2", -70));
+        assertEquals(2, buffer.size());
+        assertEquals(1, buffer.dropped());
+        assertEquals(1, buffer.coalesced());
+        // Capacity is available again after drain
+        buffer.drain();
+        assertTrue(buffer.add("C", "C2", -70));
+        assertEquals(1, buffer.dropped());
+    }
+
+    @Test
+    public void testCoalescePerformance() {
+        final int devices = 100, callbacks = 100000;
+        final BLEScanResultBuffer<Integer> buffer = new BLEScanResultBuffer<>();
+        final long t0 = System.nanoTime();
+        for (int i = 0; i < callbacks; i++) {
+            buffer.add("device" + (i % devices), i, -(i % 100));
+        }
+        final List<BLEScanResultBuffer.Entry<Integer>> entries = buffer.drain();
+        final long t1 = System.nanoTime();
+        assertEquals(devices, entries.size());
+        System.err.println("testCoalescePerformance (callbacks=" + callbacks + ",entries=" + entries.size() + ",elapsed=" + ((t1 - t0) / 1000000) + "ms)");
+    }
+}
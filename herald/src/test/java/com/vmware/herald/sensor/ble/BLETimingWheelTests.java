@@ -0,0 +1,90 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.analysis.Sample;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BLETimingWheelTests {
+
+    @Test
+    public void testExpire() {
+        final BLETimingWheel<String> wheel = new BLETimingWheel<>(1000, 8, 0);
+        wheel.schedule("a", 1500);
+        wheel.schedule("b", 2000);
+        wheel.schedule("c", 2500);
+        assertTrue(wheel.expire(1000).isEmpty());
+        // Deadline later in current tick is not expired yet
+        assertEquals(Collections.singletonList("a"), wheel.expire(1500));
+        assertEquals(Collections.singletonList("b"), wheel.expire(2000));
+        assertTrue(wheel.expire(2499).isEmpty());
+        assertEquals(Collections.singletonList("c"), wheel.expire(2500));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testScheduleAndCancel() {
+        final BLETimingWheel<String> wheel = new BLETimingWheel<>(1000, 8, 0);
+        wheel.schedule("a", 1000);
+        wheel.schedule("b", 1000);
+        // Reschedule replaces existing deadline
+        wheel.schedule("a", 3000);
+        wheel.cancel("b");
+        assertTrue(wheel.expire(2000).isEmpty());
+        assertEquals(Collections.singletonList("a"), wheel.expire(3000));
+        // Deadline in the past expires on next call
+        wheel.schedule("c", 0);
+        assertEquals(Collections.singletonList("c"), wheel.expire(3000));
+    }
+
+    @Test
+    public void testDeadlineBeyondWheelSpan() {
+        final BLETimingWheel<String> wheel = new BLETimingWheel<>(1000, 8, 0);
+        wheel.schedule("a", 20000);
+        for (long now = 0; now < 20000; now += 500) {
+            assertTrue(wheel.expire(now).isEmpty());
+        }
+        assertEquals(Collections.singletonList("a"), wheel.expire(20000));
+    }
+
+    @Test
+    public void testSkippedTicks() {
+        final BLETimingWheel<String> wheel = new BLETimingWheel<>(1000, 8, 0);
+        wheel.schedule("a", 1000);
+        wheel.schedule("b", 5000);
+        wheel.schedule("c", 12000);
+        final List<String> expired = wheel.expire(100000);
+        Collections.sort(expired);
+        assertEquals(Arrays.asList("a", "b", "c"), expired);
+    }
+
+    @Test
+    public void testPerformance() {
+        for (final int size : new int[]{50, 500, 5000}) {
+            final BLETimingWheel<Integer> wheel = new BLETimingWheel<>(1000, 1024, 0);
+            for (int i = 0; i < size; i++) {
+                wheel.schedule(i, 1000000 + i);
+            }
+            final Sample sample = new Sample();
+            long t0, t1;
+            for (long now = 0; now < 1000000; now += 1000) {
+                t0 = System.nanoTime();
+                wheel.expire(now);
+                t1 = System.nanoTime();
+                sample.add(t1 - t0);
+            }
+            assertEquals(size, wheel.size());
+            System.err.println("expire (items=" + size + ") : " + sample);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BLEWriteFragmentsTests {
+
+    private static byte[] data(final int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testFragmentSize() {
+        assertEquals(20, BLEWriteFragments.fragmentSize(23));
+        assertEquals(509, BLEWriteFragments.fragmentSize(512));
+        // Fall back to default
+        assertEquals(20, BLEWriteFragments.fragmentSize(0));
+        assertEquals(20, BLEWriteFragments.fragmentSize(-1));
+    }
+
+    @Test
+    public void testFragments() {
+        for (final int length : new int[]{1, 19, 20, 21, 100, 509, 510, 1024}) {
+            for (final int mtu : new int[]{23, 185, 512}) {
+                final byte[] data = data(length);
+                final int fragmentSize = BLEWriteFragments.fragmentSize(mtu);
+                final BLEWriteFragments fragments = new BLEWriteFragments(data, fragmentSize);
+                final int expectedFragments = (length + fragmentSize - 1) / fragmentSize;
+                assertEquals(expectedFragments, fragments.size());
+                final ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+                byte[] fragment;
+                int count = 0;
+                while ((fragment = fragments.poll()) != null) {
+                    assertEquals(Math.min(fragmentSize, length - count * fragmentSize), fragment.length);
+                    reassembled.write(fragment, 0, fragment.length);
+                    count++;
+                    assertEquals(expectedFragments - count, fragments.size());
+                }
+                assertEquals(expectedFragments, count);
+                assertArrayEquals(data, reassembled.toByteArray());
+                assertNull(fragments.poll());
+            }
+        }
+    }
+
+    @Test
+    public void testSingleFragmentIsNotCopied() {
+        final byte[] data = data(100);
+        assertSame(data, new BLEWriteFragments(data, BLEWriteFragments.fragmentSize(512)).poll());
+    }
+
+    @Test
+    public void testRoundTrips() {
+        // Payload sharing write of 510 bytes
+        final byte[] data = data(510);
+        for (final int mtu : new int[]{23, 512}) {
+            final BLEWriteFragments fragments = new BLEWriteFragments(data, BLEWriteFragments.fragmentSize(mtu));
+            System.err.println("testRoundTrips (dataLength=" + data.length + ",mtu=" + mtu + ",writes=" + fragments.size() + ")");
+        }
+        assertEquals(26, new BLEWriteFragments(data, BLEWriteFragments.fragmentSize(23)).size());
+        assertEquals(2, new BLEWriteFragments(data, BLEWriteFragments.fragmentSize(512)).size());
+    }
+}
@@ -0,0 +1,139 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.ImmediateSendData;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PayloadSharingData;
+import com.vmware.herald.sensor.datatype.RSSI;
+import com.vmware.herald.sensor.datatype.SignalCharacteristicData;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BLEWriteReassemblyTests {
+
+    private static byte[] data(final int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    /// Write data as fragments, returns bundles received.
+    private static List<byte[]> write(final BLEWriteReassembly reassembly, final String central, final byte[] data, final int mtu, final long now) {
+        final List<byte[]> bundles = new ArrayList<>();
+        final BLEWriteFragments fragments = new BLEWriteFragments(data, BLEWriteFragments.fragmentSize(mtu));
+        byte[] fragment;
+        while ((fragment = fragments.poll()) != null) {
+            bundles.addAll(reassembly.append(central, fragment, now));
+        }
+        return bundles;
+    }
+
+    @Test
+    public void testReassembly() {
+        final BLEWriteReassembly reassembly = new BLEWriteReassembly();
+        final byte[][] bundles = new byte[][]{
+                SignalCharacteristicData.encodeWriteRssi(new RSSI(-50)).value,
+                SignalCharacteristicData.encodeWritePayload(new PayloadData(data(129))).value,
+                SignalCharacteristicData.encodeWritePayloadSharing(new PayloadSharingData(new RSSI(-60), new Data(data(505)))).value,
+                SignalCharacteristicData.encodeImmediateSend(new ImmediateSendData(new Data(data(0)))).value,
+                SignalCharacteristicData.encodeImmediateSend(new ImmediateSendData(new Data(data(1000)))).value
+        };
+        for (final byte[] bundle : bundles) {
+            for (final int mtu : new int[]{23, 185, 512}) {
+                final List<byte[]> received = write(reassembly, "central", bundle, mtu, 0);
+                assertEquals(1, received.size());
+                assertArrayEquals(bundle, received.get(0));
+                assertEquals(0, reassembly.size());
+            }
+        }
+        // Unfragmented bundle is returned as is
+        assertSame(bundles[0], reassembly.append("central", bundles[0], 0).get(0));
+    }
+
+    @Test
+    public void testCoalescedBundles() {
+        final BLEWriteReassembly reassembly = new BLEWriteReassembly();
+        final Data coalesced = new Data();
+        for (int i = 0; i < 5; i++) {
+            coalesced.append(SignalCharacteristicData.encodeImmediateSend(new ImmediateSendData(new Data(data(i * 7)))));
+        }
+        final List<byte[]> received = write(reassembly, "central", coalesced.value, 23, 0);
+        assertEquals(5, received.size());
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(data(i * 7), SignalCharacteristicData.decodeImmediateSend(new Data(received.get(i))).data.value);
+        }
+        assertEquals(0, reassembly.size());
+    }
+
+    @Test
+    public void testInterleavedCentralsAndTimeout() {
+        final BLEWriteReassembly reassembly = new BLEWriteReassembly(TimeInterval.seconds(30));
+        final byte[] a = SignalCharacteristicData.encodeWritePayload(new PayloadData(data(100))).value;
+        final byte[] b = SignalCharacteristicData.encodeWritePayload(new PayloadData(data(50))).value;
+        // Fragments from two centrals are reassembled separately
+        assertTrue(reassembly.append("a", Arrays.copyOfRange(a, 0, 20), 0).isEmpty());
+        assertTrue(reassembly.append("b", Arrays.copyOfRange(b, 0, 20), 0).isEmpty());
+        assertEquals(2, reassembly.size());
+        assertTrue(reassembly.append("a", Arrays.copyOfRange(a, 20, 60), 1000).isEmpty());
+        assertArrayEquals(b, reassembly.append("b", Arrays.copyOfRange(b, 20, b.length), 1000).get(0));
+        assertArrayEquals(a, reassembly.append("a", Arrays.copyOfRange(a, 60, a.length), 2000).get(0));
+        // Stale partial buffer is discarded, such that the next write starts afresh
+        assertTrue(reassembly.append("a", Arrays.copyOfRange(a, 0, 20), 3000).isEmpty());
+        assertArrayEquals(b, write(reassembly, "a", b, 23, 40000).get(0));
+        assertEquals(1, reassembly.evicted());
+        // Partial buffer is discarded on disconnection
+        assertTrue(reassembly.append("b", Arrays.copyOfRange(b, 0, 20), 40000).isEmpty());
+        reassembly.remove("b");
+        assertEquals(0, reassembly.size());
+    }
+
+    @Test
+    public void testLinearCopies() {
+        // Payload sharing writes as 20 byte fragments, bytes copied for reassembly is linear in data
+        // length, rather than quadratic for concatenating each fragment with all previous fragments
+        long previousBytesCopied = 0;
+        int previousDataLength = 0;
+        for (int payloadLength = 505; payloadLength <= 505 * 8; payloadLength *= 2) {
+            final byte[] data = SignalCharacteristicData.encodeWritePayloadSharing(new PayloadSharingData(new RSSI(-60), new Data(data(payloadLength)))).value;
+            final int fragments = new BLEWriteFragments(data, BLEWriteFragments.defaultFragmentSize).size();
+            long bytesCopiedByConcatenation = 0;
+            for (int i = 1; i <= fragments; i++) {
+                bytesCopiedByConcatenation += Math.min(data.length, i * BLEWriteFragments.defaultFragmentSize);
+            }
+            final BLEWriteReassembly reassembly = new BLEWriteReassembly();
+            final int iterations = 1000;
+            final long t0 = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                assertEquals(1, write(reassembly, "central", data, 23, 0).size());
+            }
+            final long t1 = System.nanoTime();
+            final long bytesCopied = reassembly.bytesCopied() / iterations;
+            System.err.println("testLinearCopies (dataLength=" + data.length + ",fragments=" + fragments + ",bytesCopiedByConcatenation=" + bytesCopiedByConcatenation + ",bytesCopied=" + bytesCopied + ",meanElapsed=" + ((t1 - t0) / iterations / 1000d) + "us)");
+            // Each byte is copied into the buffer and out to the bundle, plus the buffer prefix before preallocation
+            assertTrue(bytesCopied >= 2 * data.length);
+            assertTrue(bytesCopied <= 3 * data.length);
+            // Bytes copied grows by at most two bytes per additional byte of data
+            if (previousDataLength > 0) {
+                assertTrue(bytesCopied - previousBytesCopied <= 2 * (data.length - previousDataLength));
+            }
+            previousBytesCopied = bytesCopied;
+            previousDataLength = data.length;
+        }
+    }
+}
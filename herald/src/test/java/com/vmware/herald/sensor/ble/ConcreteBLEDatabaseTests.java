@@ -0,0 +1,428 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import com.vmware.herald.sensor.analysis.Sample;
+import com.vmware.herald.sensor.datatype.Callback;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.Int32;
+import com.vmware.herald.sensor.datatype.PayloadData;
+import com.vmware.herald.sensor.datatype.PayloadSharingData;
+import com.vmware.herald.sensor.datatype.Predicate;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
+import com.vmware.herald.sensor.datatype.RSSI;
+import com.vmware.herald.sensor.datatype.TimeInterval;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcreteBLEDatabaseTests {
+
+    private static PayloadData payloadData(final int i) {
+        final PayloadData payloadData = new PayloadData();
+        payloadData.append(new Int32(i));
+        return payloadData;
+    }
+
+    private static PseudoDeviceAddress pseudoDeviceAddress(final int i) {
+        final Data data = new Data((byte) 0, 2);
+        data.append(new Int32(i));
+        return new PseudoDeviceAddress(data.value);
+    }
+
+    @Test
+    public void testPseudoDeviceAddressIndex() {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device = database.device(payloadData(1));
+        final PseudoDeviceAddress address1 = pseudoDeviceAddress(1);
+        final PseudoDeviceAddress address2 = pseudoDeviceAddress(2);
+        assertNull(database.device(address1));
+        // Index follows pseudo device address assignment
+        device.pseudoDeviceAddress(address1);
+        assertSame(device, database.device(address1));
+        assertSame(device, database.device(new PseudoDeviceAddress(address1.data)));
+        // Index follows pseudo device address update
+        device.pseudoDeviceAddress(address2);
+        assertNull(database.device(address1));
+        assertSame(device, database.device(address2));
+        // Index follows delete
+        database.delete(device);
+        assertNull(database.device(address2));
+    }
+
+    @Test
+    public void testPseudoDeviceAddressIndexPerformance() {
+        final Random random = new Random(0);
+        for (final int size : new int[]{50, 500, 5000}) {
+            final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+            final List<PseudoDeviceAddress> addresses = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                final PseudoDeviceAddress address = pseudoDeviceAddress(i);
+                database.device(payloadData(i)).pseudoDeviceAddress(address);
+                addresses.add(address);
+            }
+            final Sample sample = new Sample();
+            long t0, t1;
+            for (int i = 100000; i-- > 0; ) {
+                final PseudoDeviceAddress address = addresses.get(random.nextInt(size));
+                t0 = System.nanoTime();
+                final BLEDevice device = database.device(address);
+                t1 = System.nanoTime();
+                assertNotNull(device);
+                sample.add(t1 - t0);
+            }
+            assertEquals(size, database.devices().size());
+            System.err.println("pseudoDeviceAddressIndex (devices=" + size + ") : " + sample);
+        }
+    }
+
+    @Test
+    public void testPayloadDataIndex() {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device = database.device(payloadData(1));
+        assertSame(device, database.device(payloadData(1)));
+        assertEquals(1, database.devices().size());
+        // Index follows payload data update
+        device.payloadData(payloadData(2));
+        assertSame(device, database.device(payloadData(2)));
+        assertNotSame(device, database.device(payloadData(1)));
+        assertEquals(2, database.devices().size());
+        // Index follows delete
+        database.delete(device);
+        assertNotSame(device, database.device(payloadData(2)));
+        // Deleted device is not indexed again by late updates
+        device.payloadData(payloadData(3));
+        assertNotSame(device, database.device(payloadData(3)));
+    }
+
+    @Test
+    public void testPayloadDataIndexConcurrentCreate() throws Exception {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final int threads = 8;
+        for (int i = 0; i < 100; i++) {
+            final PayloadData payloadData = payloadData(i);
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch finish = new CountDownLatch(threads);
+            final Queue<BLEDevice> devices = new ConcurrentLinkedQueue<>();
+            for (int j = 0; j < threads; j++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            devices.add(database.device(new PayloadData(payloadData.value)));
+                        } catch (Throwable e) {
+                            // Missing device will fail test
+                        }
+                        finish.countDown();
+                    }
+                }).start();
+            }
+            start.countDown();
+            finish.await();
+            assertEquals(threads, devices.size());
+            assertEquals(1, new HashSet<>(devices).size());
+        }
+        assertEquals(100, database.devices().size());
+    }
+
+    @Test
+    public void testDelete() {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice device1 = database.device(payloadData(1));
+        final BLEDevice device2 = database.device(payloadData(2));
+        assertEquals(2, database.devices().size());
+        database.delete(device1);
+        assertNull(database.device(device1.identifier));
+        assertSame(device2, database.device(device2.identifier));
+        assertEquals(1, database.devices().size());
+        // Repeated delete is harmless
+        database.delete(device1);
+        database.delete(null);
+        assertEquals(1, database.devices().size());
+        database.delete(device2);
+        assertEquals(0, database.devices().size());
+    }
+
+    @Test
+    public void testDeletePerformance() {
+        for (final int size : new int[]{50, 500, 5000}) {
+            final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+            for (int i = 0; i < size; i++) {
+                database.device(payloadData(i));
+            }
+            final Sample sample = new Sample();
+            long t0, t1;
+            for (final BLEDevice device : database.devices()) {
+                t0 = System.nanoTime();
+                database.delete(device);
+                t1 = System.nanoTime();
+                sample.add(t1 - t0);
+            }
+            assertEquals(0, database.devices().size());
+            System.err.println("delete (devices=" + size + ") : " + sample);
+        }
+    }
+
+    private static BLEDevice shareableDevice(final ConcreteBLEDatabase database, final int i) {
+        final BLEDevice device = database.device(payloadData(i));
+        device.signalCharacteristic(new BluetoothGattCharacteristic(BLESensorConfiguration.iosSignalCharacteristicUUID, 0, 0));
+        device.operatingSystem(BLEDeviceOperatingSystem.ios);
+        return device;
+    }
+
+    @Test
+    public void testPayloadSharingData() {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final BLEDevice peer = shareableDevice(database, 0);
+        // No RSSI, no sharing
+        assertEquals(0, database.payloadSharingData(peer).data.value.length);
+        peer.rssi(new RSSI(-50));
+        // No other devices, no sharing
+        assertEquals(0, database.payloadSharingData(peer).data.value.length);
+        // Non-shareable devices are excluded
+        database.device(payloadData(1000));
+        assertEquals(0, database.payloadSharingData(peer).data.value.length);
+        // 200 devices with 4 byte payloads, only 127 fit in 510 bytes
+        for (int i = 1; i <= 200; i++) {
+            shareableDevice(database, i);
+        }
+        // Most recently updated first
+        final List<PayloadData> newPayloads = new ArrayList<>();
+        final PayloadSharingData share1 = database.payloadSharingData(peer, newPayloads);
+        assertEquals(127 * 4, share1.data.value.length);
+        assertEquals(new Data(payloadData(200).value), share1.data.subdata(0, 4));
+        assertEquals(new Data(payloadData(74).value), share1.data.subdata(126 * 4, 4));
+        assertEquals(127, newPayloads.size());
+        // Query does not record payloads as shared, e.g. when planning connections
+        assertEquals(share1.data, database.payloadSharingData(peer).data);
+        assertEquals(0, peer.payloadSharingData.size());
+        // Payloads are recorded as shared on successful write
+        for (final PayloadData payloadData : newPayloads) {
+            peer.payloadSharingData.add(payloadData);
+        }
+        // Payloads not shared yet are shared first, then the most recent known payloads
+        newPayloads.clear();
+        final PayloadSharingData share2 = database.payloadSharingData(peer, newPayloads);
+        assertEquals(127 * 4, share2.data.value.length);
+        assertEquals(new Data(payloadData(73).value), share2.data.subdata(0, 4));
+        assertEquals(new Data(payloadData(1).value), share2.data.subdata(72 * 4, 4));
+        assertEquals(new Data(payloadData(200).value), share2.data.subdata(73 * 4, 4));
+        assertEquals(73, newPayloads.size());
+        for (final PayloadData payloadData : newPayloads) {
+            peer.payloadSharingData.add(payloadData);
+        }
+        // Payloads of devices not seen recently are not shared
+        final BLEDevice expired = database.device(payloadData(200));
+        expired.lastUpdatedAt = new Date(System.currentTimeMillis() - BLESensorConfiguration.payloadSharingExpiryTimeInterval.millis());
+        final PayloadSharingData share3 = database.payloadSharingData(peer);
+        assertEquals(new Data(payloadData(199).value), share3.data.subdata(0, 4));
+    }
+
+    @Test
+    public void testPayloadSharingDataPerformance() {
+        for (final int size : new int[]{50, 500, 5000}) {
+            final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+            final BLEDevice peer = shareableDevice(database, 0);
+            peer.rssi(new RSSI(-50));
+            for (int i = 1; i <= size; i++) {
+                shareableDevice(database, i);
+            }
+            final Sample sample = new Sample();
+            long t0, t1;
+            for (int i = 100; i-- > 0; ) {
+                t0 = System.nanoTime();
+                database.payloadSharingData(peer);
+                t1 = System.nanoTime();
+                sample.add(t1 - t0);
+            }
+            System.err.println("payloadSharingData (devices=" + size + ") : " + sample);
+        }
+    }
+
+    @Test
+    public void testBatchDelegate() throws Exception {
+        final TimeInterval databaseEventBatchTimeInterval = BLESensorConfiguration.databaseEventBatchTimeInterval;
+        BLESensorConfiguration.databaseEventBatchTimeInterval = new TimeInterval(1);
+        try {
+            final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+            final List<List<BLEDatabaseEvent>> batches = new ArrayList<>();
+            final CountDownLatch delivered = new CountDownLatch(1);
+            // Delegates are called in order, per-event delegate first to complete before batch delegate
+            final StringBuilder adapted = new StringBuilder();
+            database.add(new BLEDatabaseDelegate() {
+                @Override
+                public void bleDatabaseDidCreate(BLEDevice device) {
+                    adapted.append("create,");
+                }
+
+                @Override
+                public void bleDatabaseDidUpdate(BLEDevice device, BLEDeviceAttribute attribute) {
+                    adapted.append(attribute.name()).append(",");
+                }
+
+                @Override
+                public void bleDatabaseDidDelete(BLEDevice device) {
+                    adapted.append("delete,");
+                }
+            });
+            database.add(new BLEDatabaseBatchDelegate() {
+                @Override
+                public void bleDatabaseDidUpdate(List<BLEDatabaseEvent> events) {
+                    batches.add(events);
+                    delivered.countDown();
+                }
+            });
+            final BLEDevice device = database.device(payloadData(1));
+            for (int i = 0; i < 100; i++) {
+                device.rssi(new RSSI(-i));
+            }
+            device.payloadData(payloadData(2));
+            database.delete(device);
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            // All events are delivered in one batch, with updates coalesced per attribute except RSSI
+            assertEquals(1, batches.size());
+            final List<BLEDatabaseEvent> events = batches.get(0);
+            assertEquals(103, events.size());
+            assertEquals(BLEDatabaseEvent.Type.create, events.get(0).type);
+            assertEquals(BLEDeviceAttribute.payloadData, events.get(1).attribute);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(BLEDeviceAttribute.rssi, events.get(2 + i).attribute);
+            }
+            assertEquals(BLEDatabaseEvent.Type.delete, events.get(102).type);
+            // Per-event delegate receives the same events in order
+            final StringBuilder expected = new StringBuilder("create,payloadData,");
+            for (int i = 0; i < 100; i++) {
+                expected.append("rssi,");
+            }
+            expected.append("delete,");
+            assertEquals(expected.toString(), adapted.toString());
+        } finally {
+            BLESensorConfiguration.databaseEventBatchTimeInterval = databaseEventBatchTimeInterval;
+        }
+    }
+
+    @Test
+    public void testBatchDelegateWithoutBatchTimeInterval() throws Exception {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        final List<BLEDatabaseEvent> events = new ArrayList<>();
+        final AtomicInteger batches = new AtomicInteger(0);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        database.add(new BLEDatabaseBatchDelegate() {
+            @Override
+            public void bleDatabaseDidUpdate(List<BLEDatabaseEvent> batch) {
+                batches.incrementAndGet();
+                events.addAll(batch);
+                if (batch.get(batch.size() - 1).type == BLEDatabaseEvent.Type.delete) {
+                    delivered.countDown();
+                }
+            }
+        });
+        final BLEDevice device = database.device(payloadData(1));
+        for (int i = 0; i < 10; i++) {
+            device.rssi(new RSSI(-i));
+        }
+        device.payloadData(payloadData(2));
+        database.delete(device);
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        // Events are delivered as soon as possible in order, at most one batch per event, and
+        // every RSSI update is delivered
+        assertTrue(batches.get() <= events.size());
+        assertTrue(events.size() <= 14);
+        assertEquals(BLEDatabaseEvent.Type.create, events.get(0).type);
+        int rssi = 0;
+        for (final BLEDatabaseEvent event : events) {
+            if (event.attribute == BLEDeviceAttribute.rssi) {
+                rssi++;
+            }
+        }
+        assertEquals(10, rssi);
+        assertEquals(BLEDatabaseEvent.Type.delete, events.get(events.size() - 1).type);
+    }
+
+    @Test
+    public void testExpiredDevicesAndConnections() throws Exception {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase(new TimeInterval(1), new TimeInterval(1));
+        final BLEDevice device1 = database.device(payloadData(1));
+        final BLEDevice device2 = database.device(payloadData(2));
+        final BLEDevice device3 = database.device(payloadData(3));
+        device2.state(BLEDeviceState.connected);
+        device3.state(BLEDeviceState.connected);
+        device3.state(BLEDeviceState.disconnected);
+        assertTrue(database.expiredDevices().isEmpty());
+        assertTrue(database.expiredConnections().isEmpty());
+        Thread.sleep(600);
+        device1.rssi(new RSSI(-50));
+        Thread.sleep(600);
+        // Device 1 was updated since creation
+        final List<BLEDevice> expiredDevices = database.expiredDevices();
+        assertEquals(2, expiredDevices.size());
+        assertTrue(expiredDevices.contains(device2));
+        assertTrue(expiredDevices.contains(device3));
+        // Device 3 has been disconnected
+        assertEquals(Collections.singletonList(device2), database.expiredConnections());
+        // Expired devices and connections are only returned once
+        assertTrue(database.expiredConnections().isEmpty());
+        database.delete(device2);
+        database.delete(device3);
+        Thread.sleep(600);
+        assertEquals(Collections.singletonList(device1), database.expiredDevices());
+        assertTrue(database.expiredDevices().isEmpty());
+    }
+
+    @Test
+    public void testForEachDevice() {
+        final ConcreteBLEDatabase database = new ConcreteBLEDatabase();
+        for (int i = 0; i < 10; i++) {
+            database.device(payloadData(i)).rssi(new RSSI(-i));
+        }
+        final List<BLEDevice> visited = new ArrayList<>();
+        database.forEachDevice(new Callback<BLEDevice>() {
+            @Override
+            public void accept(BLEDevice device) {
+                visited.add(device);
+            }
+        });
+        assertEquals(10, visited.size());
+        assertEquals(10, new HashSet<>(visited).size());
+        // Filtered
+        visited.clear();
+        database.forEachDevice(new Predicate<BLEDevice>() {
+            @Override
+            public boolean test(BLEDevice device) {
+                return device.rssi().value > -5;
+            }
+        }, new Callback<BLEDevice>() {
+            @Override
+            public void accept(BLEDevice device) {
+                visited.add(device);
+            }
+        });
+        assertEquals(5, visited.size());
+        for (final BLEDevice device : visited) {
+            assertTrue(device.rssi().value > -5);
+        }
+    }
+}
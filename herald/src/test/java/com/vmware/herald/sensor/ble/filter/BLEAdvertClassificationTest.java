@@ -0,0 +1,108 @@
+//  Copyright 2020 VMware, Inc.
+//  SPDX-License-Identifier: Apache-2.0
+//
+
+package com.vmware.herald.sensor.ble.filter;
+
+import com.vmware.herald.sensor.ble.BLESensorConfiguration;
+import com.vmware.herald.sensor.datatype.Data;
+import com.vmware.herald.sensor.datatype.PseudoDeviceAddress;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BLEAdvertClassificationTest {
+
+    /// Encode UUID as 128-bit service UUID list segment
+    private static String serviceUUID128Segment(final UUID uuid) {
+        final Data data = new Data();
+        data.append(new Data((byte) 17, 1));
+        data.append(new Data((byte) 0x07, 1));
+        for (int i = 0; i < 8; i++) {
+            data.append(new Data((byte) (uuid.getLeastSignificantBits() >> (8 * i)), 1));
+        }
+        for (int i = 0; i < 8; i++) {
+            data.append(new Data((byte) (uuid.getMostSignificantBits() >> (8 * i)), 1));
+        }
+        return data.hexEncodedString();
+    }
+
+    @Test
+    public void testAndroid() throws Exception {
+        // Flags, sensor service, sensor manufacturer data with pseudo device address
+        final Data raw = Data.fromHexEncodedString("020106" + serviceUUID128Segment(BLESensorConfiguration.serviceUUID) + "09FFFAFF010203040506");
+        final BLEAdvertClassification classification = new BLEAdvertClassification().classify(raw.value);
+        assertTrue(classification.hasSensorService());
+        assertFalse(classification.hasOpenTraceService());
+        assertFalse(classification.isAppleDevice());
+        assertFalse(classification.isOpenTraceAndroidDevice());
+        assertEquals(new PseudoDeviceAddress(Data.fromHexEncodedString("010203040506").value), classification.pseudoDeviceAddress());
+        assertEquals(Integer.MIN_VALUE, classification.txPower());
+        assertEquals(1, classification.manufacturerDataCount());
+
+        // Pseudo device address must be 6 bytes
+        classification.classify(Data.fromHexEncodedString("020106" + serviceUUID128Segment(BLESensorConfiguration.serviceUUID) + "08FFFAFF0102030405").value);
+        assertTrue(classification.hasSensorService());
+        assertNull(classification.pseudoDeviceAddress());
+    }
+
+    @Test
+    public void testApple() throws Exception {
+        final Data raw = Data.fromHexEncodedString("02011A020A0C0BFF4C001006071EA3DD89E014FF4C0001000000000000000000002000000000000000000000000000000000000000000000000000000000");
+        final BLEAdvertClassification classification = new BLEAdvertClassification().classify(raw.value);
+        assertFalse(classification.hasSensorService());
+        assertTrue(classification.isAppleDevice());
+        assertNull(classification.pseudoDeviceAddress());
+        assertEquals(12, classification.txPower());
+        assertEquals(2, classification.manufacturerDataCount());
+        // Messages are identical to parsing the scan record
+        final List<Data> expected = BLEDeviceFilter.extractMessages(raw.value);
+        final List<Data> actual = BLEDeviceFilter.extractMessages(classification);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).hexEncodedString(), actual.get(i).hexEncodedString());
+        }
+        assertEquals(BLEDeviceFilter.match(BLEDeviceFilter.compilePatterns(new String[]{"^10....1E"}), raw).message,
+                "1006071EA3DD89E0");
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        final BLEAdvertClassification classification = new BLEAdvertClassification();
+        classification.classify(Data.fromHexEncodedString("020A0C0BFF4C001006071EA3DD89E0").value);
+        assertTrue(classification.isAppleDevice());
+        assertEquals(12, classification.txPower());
+        // Result is reset for each scan record
+        classification.classify(Data.fromHexEncodedString("020106").value);
+        assertFalse(classification.isAppleDevice());
+        assertEquals(Integer.MIN_VALUE, classification.txPower());
+        assertEquals(0, classification.manufacturerDataCount());
+        assertNull(BLEDeviceFilter.extractMessages(classification));
+        // Invalid data
+        classification.classify(null);
+        assertFalse(classification.hasSensorService());
+        classification.classify(Data.fromHexEncodedString("FFFF").value);
+        assertFalse(classification.hasSensorService());
+    }
+
+    @Test
+    public void testServiceUUID16() throws Exception {
+        final UUID serviceUUID = BLESensorConfiguration.serviceUUID;
+        try {
+            BLESensorConfiguration.serviceUUID = UUID.fromString("0000FD6F-0000-1000-8000-00805F9B34FB");
+            final BLEAdvertClassification classification = new BLEAdvertClassification();
+            // Little endian 16-bit UUID in complete list
+            assertTrue(classification.classify(Data.fromHexEncodedString("0503AAAA6FFD").value).hasSensorService());
+            assertFalse(classification.classify(Data.fromHexEncodedString("0503AAAAFD6F").value).hasSensorService());
+        } finally {
+            BLESensorConfiguration.serviceUUID = serviceUUID;
+        }
+    }
+}
@@ -72,6 +72,29 @@ public class SignalCharacteristicDataTests {
         assertNull(SignalCharacteristicData.decodeImmediateSend(new Data()));
     }
 
+    @Test
+    public void testBundleLength() {
+        final byte[][] bundles = new byte[][]{
+                SignalCharacteristicData.encodeWriteRssi(new RSSI(-50)).value,
+                SignalCharacteristicData.encodeWritePayload(new PayloadData(new byte[100])).value,
+                SignalCharacteristicData.encodeWritePayloadSharing(new PayloadSharingData(new RSSI(-50), new Data(new byte[100]))).value,
+                SignalCharacteristicData.encodeImmediateSend(new ImmediateSendData(new Data(new byte[300]))).value
+        };
+        for (final byte[] bundle : bundles) {
+            assertEquals(bundle.length, SignalCharacteristicData.bundleLength(bundle, 0, bundle.length));
+            // Header incomplete
+            assertEquals(-1, SignalCharacteristicData.bundleLength(bundle, 0, 0));
+            // Header at offset
+            final byte[] prefixed = new byte[bundle.length + 1];
+            System.arraycopy(bundle, 0, prefixed, 1, bundle.length);
+            assertEquals(bundle.length, SignalCharacteristicData.bundleLength(prefixed, 1, bundle.length));
+        }
+        assertEquals(-1, SignalCharacteristicData.bundleLength(bundles[1], 0, 2));
+        assertEquals(-1, SignalCharacteristicData.bundleLength(bundles[2], 0, 4));
+        // Unknown length
+        assertEquals(0, SignalCharacteristicData.bundleLength(new byte[]{0, 1, 2}, 0, 3));
+    }
+
     @Test
     public void testDetect() {
         assertEquals(SignalCharacteristicDataType.rssi, SignalCharacteristicData.detect(SignalCharacteristicData.encodeWriteRssi(new RSSI(0))));
@@ -117,6 +117,46 @@ public class SimplePayloadDataSupplierTests {
         assertFalse(Arrays.deepEquals(km2, km3));
     }
 
+    @Test
+    public void testMatchingKeyChain() {
+        final SecretKey ks1 = new SecretKey((byte) 0, 2048);
+        final SecretKey ks2 = new SecretKey((byte) 1, 2048);
+        final MatchingKey[] km1 = K.matchingKeys(ks1);
+        final MatchingKey[] km2 = K.matchingKeys(ks2);
+        final MatchingKeyChain kmc1 = new MatchingKeyChain(ks1);
+        final MatchingKeyChain kmc2 = new MatchingKeyChain(ks2);
+        assertEquals(km1.length, kmc1.size());
+        // Same matching keys as eager generation, in forward and reverse order
+        for (int day=0; day<km1.length; day++) {
+            assertTrue(Arrays.equals(km1[day].value, kmc1.matchingKey(day).value));
+        }
+        for (int day=km2.length; day-->0;) {
+            assertTrue(Arrays.equals(km2[day].value, kmc2.matchingKey(day).value));
+        }
+        // Repeated request for same day
+        assertTrue(Arrays.equals(km1[1000].value, kmc1.matchingKey(1000).value));
+        assertTrue(Arrays.equals(km1[1000].value, kmc1.matchingKey(1000).value));
+        // Out of range
+        assertEquals(null, kmc1.matchingKey(-1));
+        assertEquals(null, kmc1.matchingKey(km1.length));
+    }
+
+    @Test
+    public void testMatchingKeyChainPerformance() {
+        final SecretKey ks1 = new SecretKey((byte) 0, 2048);
+        final long t0 = System.nanoTime();
+        final MatchingKey[] km1 = K.matchingKeys(ks1);
+        final long t1 = System.nanoTime();
+        final MatchingKeyChain kmc1 = new MatchingKeyChain(ks1);
+        final MatchingKey today = kmc1.matchingKey(100);
+        final long t2 = System.nanoTime();
+        final MatchingKey tomorrow = kmc1.matchingKey(101);
+        final long t3 = System.nanoTime();
+        assertTrue(Arrays.equals(km1[100].value, today.value));
+        assertTrue(Arrays.equals(km1[101].value, tomorrow.value));
+        System.err.println("testMatchingKeyChainPerformance (matchingKeys=" + (t1 - t0) / 1000 + "us,matchingKeyChainFirstDay=" + (t2 - t1) / 1000 + "us,matchingKeyChainNextDay=" + (t3 - t2) / 1000 + "us)");
+    }
+
     @Test
     public void testContactKeys() {
         // Generate secret and matching keys